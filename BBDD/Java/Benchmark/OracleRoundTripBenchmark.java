@@ -0,0 +1,409 @@
+/**
+ * OracleRoundTripBenchmark
+ *
+ * Banco de pruebas del ciclo completo OracleTableExporter -> OracleTableImporter, y de la copia directa
+ * con OracleSchemaCopier, sobre bases de datos embebidas (H2 en modo Oracle) que hacen de sustitutas de Oracle.
+ *
+ * 1. Genera en la base de datos de origen un esquema sintético con la escala configurada:
+ *    - ESTRECHA: muchas filas de pocas columnas ("bench.estrecha.filas").
+ *    - ANCHA: tabla de "bench.ancha.columnas" columnas de texto ("bench.ancha.filas").
+ *    - LOB_PEQUENOS: muchas filas con un CLOB pequeño de unos "bench.lob.pequenos.bytes" bytes.
+ *    - LOB_GRANDES: unas pocas filas con un BLOB de "bench.lob.grandes.mb" MB.
+ * 2. Exporta el esquema con OracleTableExporter a la carpeta de trabajo.
+ * 3. Importa la exportación con OracleTableImporter en una base de datos de destino vacía.
+ * 4. Copia el esquema con OracleSchemaCopier directamente del origen a una tercera base de datos vacía.
+ * 5. Comprueba que el número de filas de cada tabla coincide en origen, destino y copia, y verifica el
+ *    destino contra las sumas de control de la exportación con OracleTableChecksums (fase VERIFY).
+ *
+ * Por cada fase muestra el tiempo, filas y filas/s, MB y MB/s de los ficheros de exportación, el pico de
+ * heap y el número de ficheros, y añade una línea por fase a RESULTADOS.tsv para comparar ejecuciones.
+ * Cada herramienta escribe además su informe de métricas (OracleRunMetrics) en la carpeta de trabajo.
+ *
+ * Para que el exportador funcione sobre H2 se crean en el origen sustitutos de DBMS_METADATA.GET_DDL
+ * (devuelve el DDL de las tablas generadas) y de las vistas ALL_SEQUENCES, ALL_TRIGGERS y ALL_OBJECTS, y
+ * en todas las bases de datos el de DBMS_LOB.GETLENGTH que usan las sumas de control.
+ * Las claves de OracleTableExporter.properties ("import.*", "pool.*", "metricas.top"...) se pueden
+ * indicar también en OracleRoundTripBenchmark.properties y se pasan a las dos herramientas.
+ *
+ * La carpeta de trabajo (bench.dir) se borra al empezar solo si no existe, está vacía o la creó una
+ * ejecución anterior (contiene el fichero de marca .oracle-round-trip-benchmark); cualquier otra carpeta
+ * con contenido se rechaza para no borrar datos ajenos por un error en la configuración.
+ *
+ * Compilación y ejecución desde esta carpeta, con el jar de H2:
+ *   javac -sourcepath ../ExportBBDD:../Comun -d . OracleRoundTripBenchmark.java
+ *   java -cp .:h2.jar OracleRoundTripBenchmark
+ */
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.sql.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+public class OracleRoundTripBenchmark {
+
+    private static final String CONFIG_FILE = "OracleRoundTripBenchmark.properties";
+    private static final String RESULTADOS_FILE = "RESULTADOS.tsv";
+    private static final String MARCA_FILE = ".oracle-round-trip-benchmark";
+    private static final String ESQUEMA = "APP";
+    private static final int FILAS_POR_LOTE = 1000;
+    private static final int FILAS_POR_COMMIT = 10000;
+
+    // DDL de las tablas generadas, que devuelve el sustituto de DBMS_METADATA.GET_DDL
+    private static final Map<String, String> ddlTablas = new LinkedHashMap<>();
+
+    public static void main(String[] args) {
+        Properties config;
+        try {
+            config = OracleConnectionPool.loadConfig(CONFIG_FILE);
+        } catch (IOException e) {
+            System.err.println("No se pudo cargar el archivo de configuración " + CONFIG_FILE);
+            return;
+        }
+
+        File carpeta = new File(config.getProperty("bench.dir", "bench")).getAbsoluteFile();
+        File exportDir = new File(carpeta, "export");
+        String urlOrigen = config.getProperty("bench.origen.url", "jdbc:h2:" + new File(carpeta, "origen") + ";MODE=Oracle");
+        String urlDestino = config.getProperty("bench.destino.url", "jdbc:h2:" + new File(carpeta, "destino") + ";MODE=Oracle");
+        String urlCopia = config.getProperty("bench.copia.url", "jdbc:h2:" + new File(carpeta, "copia") + ";MODE=Oracle");
+
+        if (carpeta.exists()) {
+            String[] contenido = carpeta.list();
+            if (contenido == null) {
+                System.err.println("bench.dir no es una carpeta: " + carpeta);
+                return;
+            }
+            if (contenido.length > 0 && !new File(carpeta, MARCA_FILE).isFile()) {
+                System.err.println("La carpeta de trabajo " + carpeta + " no está vacía y no la creó el benchmark"
+                        + " (falta " + MARCA_FILE + "); no se borra. Indique otra carpeta en bench.dir.");
+                return;
+            }
+            borrar(carpeta);
+        }
+        if (!carpeta.mkdirs()) {
+            System.err.println("No se pudo crear la carpeta de trabajo: " + carpeta);
+            return;
+        }
+        try {
+            new File(carpeta, MARCA_FILE).createNewFile();
+        } catch (IOException e) {
+            System.err.println("No se pudo crear el fichero de marca en " + carpeta + ": " + e.getMessage());
+            return;
+        }
+
+        try {
+            // 1. Generar el esquema sintético
+            System.out.println("Generando datos sintéticos en " + urlOrigen);
+            long inicio = System.nanoTime();
+            try (Connection conn = DriverManager.getConnection(urlOrigen, "sa", "")) {
+                prepararOrigen(conn);
+                generarDatos(conn, config);
+            }
+            System.out.println(String.format(Locale.ROOT, "Datos generados en %.1f s", (System.nanoTime() - inicio) / 1e9));
+
+            for (String url : Arrays.asList(urlDestino, urlCopia)) {
+                try (Connection conn = DriverManager.getConnection(url, "sa", "");
+                     Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE SCHEMA IF NOT EXISTS " + ESQUEMA);
+                    crearDbmsLob(stmt);
+                }
+            }
+
+            // 2. Exportar
+            Properties exportacion = configuracionHerramienta(config, urlOrigen, exportDir, new File(carpeta, "OracleTableExporter"));
+            Fase exportar = medir("EXPORT", () -> OracleTableExporter.runExport(exportacion));
+            completarConFicheros(exportar, exportDir);
+
+            // 3. Importar
+            Properties importacion = configuracionHerramienta(config, urlDestino, exportDir, new File(carpeta, "OracleTableImporter"));
+            Fase importar = medir("IMPORT", () -> OracleTableImporter.importar(importacion));
+            // La importación lee los mismos ficheros que ha escrito la exportación
+            importar.filas = exportar.filas;
+            importar.bytes = exportar.bytes;
+            importar.ficheros = exportar.ficheros;
+
+            // 4. Copiar
+            Properties copia = configuracionHerramienta(config, urlOrigen, exportDir, new File(carpeta, "OracleSchemaCopier"));
+            copia.setProperty("copia.jdbc.url", urlCopia);
+            copia.setProperty("copia.jdbc.user", "sa");
+            copia.setProperty("copia.jdbc.password", "");
+            copia.setProperty("copia.rechazos", new File(carpeta, "OracleSchemaCopier_rechazados.sql").getPath());
+            Fase copiar = medir("COPY", () -> OracleSchemaCopier.copiar(copia));
+            // Sin ficheros intermedios: se compara con las mismas filas que la exportación
+            copiar.filas = exportar.filas;
+
+            // 5. Comprobar
+            boolean correcto = comprobarFilas(urlOrigen, urlDestino);
+            correcto &= comprobarFilas(urlOrigen, urlCopia);
+            boolean[] verificado = new boolean[1];
+            Fase verificar = medir("VERIFY", () -> verificado[0] = OracleTableChecksums.verificar(importacion));
+            verificar.filas = exportar.filas;
+            correcto &= verificado[0];
+
+            List<Fase> fases = Arrays.asList(exportar, importar, copiar, verificar);
+            mostrarResultados(fases);
+            guardarResultados(new File(RESULTADOS_FILE), config, fases, correcto);
+        } catch (SQLException | IOException e) {
+            System.err.println("Error en el benchmark: " + e.getMessage());
+        }
+    }
+
+    // Sustitutos en H2 de lo que el exportador consulta en el diccionario de Oracle
+    private static void prepararOrigen(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE SCHEMA IF NOT EXISTS " + ESQUEMA);
+            stmt.execute("CREATE SCHEMA IF NOT EXISTS DBMS_METADATA");
+            stmt.execute("CREATE ALIAS DBMS_METADATA.GET_DDL FOR '" + OracleRoundTripBenchmark.class.getName() + ".getDdl'");
+            stmt.execute("CREATE VIEW ALL_SEQUENCES AS SELECT SEQUENCE_NAME, SEQUENCE_SCHEMA AS SEQUENCE_OWNER"
+                    + " FROM INFORMATION_SCHEMA.SEQUENCES");
+            stmt.execute("CREATE VIEW ALL_TRIGGERS AS SELECT TRIGGER_NAME, TRIGGER_SCHEMA AS OWNER FROM INFORMATION_SCHEMA.TRIGGERS");
+            stmt.execute("CREATE VIEW ALL_OBJECTS AS SELECT CAST(NULL AS VARCHAR(128)) AS OBJECT_NAME,"
+                    + " CAST(NULL AS VARCHAR(128)) AS OWNER, CAST(NULL AS VARCHAR(30)) AS OBJECT_TYPE FROM DUAL WHERE 1 = 0");
+            stmt.execute("CREATE SEQUENCE " + ESQUEMA + ".BENCH_SEQ");
+            crearDbmsLob(stmt);
+        }
+    }
+
+    private static void crearDbmsLob(Statement stmt) throws SQLException {
+        stmt.execute("CREATE SCHEMA IF NOT EXISTS DBMS_LOB");
+        stmt.execute("CREATE ALIAS IF NOT EXISTS DBMS_LOB.GETLENGTH FOR '" + OracleRoundTripBenchmark.class.getName() + ".getLength'");
+    }
+
+    // Llamado desde H2 como DBMS_LOB.GETLENGTH(blob)
+    public static Long getLength(Blob blob) throws SQLException {
+        return blob == null ? null : blob.length();
+    }
+
+    // Llamado desde H2 como DBMS_METADATA.GET_DDL(tipo, nombre, esquema)
+    public static String getDdl(String tipo, String nombre, String esquema) {
+        if ("TABLE".equals(tipo)) return ddlTablas.get(nombre);
+        if ("SEQUENCE".equals(tipo)) return "CREATE SEQUENCE " + esquema + "." + nombre;
+        return null;
+    }
+
+    private static void generarDatos(Connection conn, Properties config) throws SQLException {
+        Random random = new Random(42);
+        conn.setAutoCommit(false);
+
+        int filas = Integer.parseInt(config.getProperty("bench.estrecha.filas", "10000000"));
+        crearTabla(conn, "ESTRECHA", "ID NUMBER(12) PRIMARY KEY, COD NUMBER(6), NOMBRE VARCHAR2(30)");
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + ESQUEMA + ".ESTRECHA VALUES (?, ?, ?)")) {
+            for (int i = 1; i <= filas; i++) {
+                ps.setInt(1, i);
+                ps.setInt(2, random.nextInt(1000000));
+                ps.setString(3, "nombre-" + i);
+                anadirFila(conn, ps, i, filas);
+            }
+        }
+
+        int columnas = Integer.parseInt(config.getProperty("bench.ancha.columnas", "60"));
+        filas = Integer.parseInt(config.getProperty("bench.ancha.filas", "200000"));
+        StringBuilder definicion = new StringBuilder("ID NUMBER(12) PRIMARY KEY");
+        StringBuilder marcas = new StringBuilder("?");
+        for (int c = 1; c <= columnas; c++) {
+            definicion.append(String.format(", C%02d VARCHAR2(40)", c));
+            marcas.append(", ?");
+        }
+        crearTabla(conn, "ANCHA", definicion.toString());
+        String[] textos = new String[1024];
+        for (int i = 0; i < textos.length; i++) textos[i] = texto(random, 10 + random.nextInt(31));
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + ESQUEMA + ".ANCHA VALUES (" + marcas + ")")) {
+            for (int i = 1; i <= filas; i++) {
+                ps.setInt(1, i);
+                for (int c = 1; c <= columnas; c++) ps.setString(c + 1, textos[random.nextInt(textos.length)]);
+                anadirFila(conn, ps, i, filas);
+            }
+        }
+
+        filas = Integer.parseInt(config.getProperty("bench.lob.pequenos.filas", "50000"));
+        int bytesClob = Integer.parseInt(config.getProperty("bench.lob.pequenos.bytes", "2048"));
+        crearTabla(conn, "LOB_PEQUENOS", "ID NUMBER(12) PRIMARY KEY, DOC CLOB");
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + ESQUEMA + ".LOB_PEQUENOS VALUES (?, ?)")) {
+            for (int i = 1; i <= filas; i++) {
+                ps.setInt(1, i);
+                ps.setString(2, texto(random, bytesClob / 2 + random.nextInt(bytesClob + 1)));
+                anadirFila(conn, ps, i, filas);
+            }
+        }
+
+        filas = Integer.parseInt(config.getProperty("bench.lob.grandes.filas", "3"));
+        int bytesBlob = Integer.parseInt(config.getProperty("bench.lob.grandes.mb", "20")) * 1024 * 1024;
+        crearTabla(conn, "LOB_GRANDES", "ID NUMBER(12) PRIMARY KEY, DATOS BLOB");
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + ESQUEMA + ".LOB_GRANDES VALUES (?, ?)")) {
+            byte[] datos = new byte[bytesBlob];
+            for (int i = 1; i <= filas; i++) {
+                random.nextBytes(datos);
+                ps.setInt(1, i);
+                ps.setBytes(2, datos);
+                ps.executeUpdate();
+                conn.commit();
+            }
+        }
+        conn.setAutoCommit(true);
+    }
+
+    private static void crearTabla(Connection conn, String tabla, String columnas) throws SQLException {
+        String ddl = "CREATE TABLE " + ESQUEMA + "." + tabla + " (" + columnas + ")";
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(ddl);
+        }
+        ddlTablas.put(tabla, ddl);
+        System.out.println("  " + tabla);
+    }
+
+    private static void anadirFila(Connection conn, PreparedStatement ps, int fila, int total) throws SQLException {
+        ps.addBatch();
+        if (fila % FILAS_POR_LOTE == 0 || fila == total) ps.executeBatch();
+        if (fila % FILAS_POR_COMMIT == 0 || fila == total) conn.commit();
+    }
+
+    private static String texto(Random random, int longitud) {
+        char[] texto = new char[longitud];
+        for (int i = 0; i < longitud; i++) texto[i] = (char) ('a' + random.nextInt(26));
+        return new String(texto);
+    }
+
+    // Configuración de una herramienta: la del benchmark más la conexión y las rutas de trabajo
+    private static Properties configuracionHerramienta(Properties config, String url, File exportDir, File informes) {
+        Properties herramienta = new Properties();
+        herramienta.putAll(config);
+        herramienta.setProperty("jdbc.url", url);
+        herramienta.setProperty("jdbc.user", "sa");
+        herramienta.setProperty("jdbc.password", "");
+        herramienta.setProperty("jdbc.schema", ESQUEMA);
+        herramienta.setProperty("export.dir", exportDir.getPath());
+        herramienta.setProperty("encoding", config.getProperty("encoding", "UTF-8"));
+        herramienta.setProperty("export.metricas.informe", informes + ".metricas.json");
+        herramienta.setProperty("export.metricas.lentas", informes + ".lentas.txt");
+        herramienta.setProperty("import.metricas.informe", informes + ".metricas.json");
+        herramienta.setProperty("import.metricas.lentas", informes + ".lentas.txt");
+        herramienta.setProperty("copia.metricas.informe", informes + ".metricas.json");
+        herramienta.setProperty("copia.metricas.lentas", informes + ".lentas.txt");
+        return herramienta;
+    }
+
+    // Resultado de una fase
+    private static class Fase {
+        final String nombre;
+        long nanos;
+        long picoHeap;
+        long filas;
+        long bytes;
+        int ficheros;
+
+        Fase(String nombre) {
+            this.nombre = nombre;
+        }
+
+        double segundos() {
+            return Math.max(nanos, 1) / 1e9;
+        }
+    }
+
+    private static Fase medir(String nombre, Runnable accion) {
+        System.out.println();
+        System.out.println("=== " + nombre + " ===");
+        System.gc();
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+                heap.add(pool);
+            }
+        }
+        Fase fase = new Fase(nombre);
+        long inicio = System.nanoTime();
+        accion.run();
+        fase.nanos = System.nanoTime() - inicio;
+        for (MemoryPoolMXBean pool : heap) fase.picoHeap += pool.getPeakUsage().getUsed();
+        return fase;
+    }
+
+    // Filas (según el manifiesto), bytes y número de ficheros de la carpeta de exportación
+    private static void completarConFicheros(Fase fase, File exportDir) throws IOException {
+        File[] ficheros = exportDir.listFiles();
+        if (ficheros == null) return;
+        for (File fichero : ficheros) {
+            fase.ficheros++;
+            fase.bytes += fichero.length();
+        }
+        File manifiesto = new File(exportDir, "MANIFEST.tsv");
+        if (!manifiesto.exists()) return;
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifiesto))) {
+            String linea;
+            while ((linea = reader.readLine()) != null) {
+                String[] campos = linea.split("\t");
+                if (campos.length >= 4 && campos[0].equals("INSERTS")) fase.filas += Long.parseLong(campos[3]);
+            }
+        }
+    }
+
+    private static boolean comprobarFilas(String urlOrigen, String urlDestino) throws SQLException {
+        boolean correcto = true;
+        System.out.println();
+        try (Connection origen = DriverManager.getConnection(urlOrigen, "sa", "");
+             Connection destino = DriverManager.getConnection(urlDestino, "sa", "")) {
+            for (String tabla : ddlTablas.keySet()) {
+                long filasOrigen = contar(origen, tabla);
+                long filasDestino = contar(destino, tabla);
+                if (filasOrigen != filasDestino) {
+                    System.err.println("Diferencia en " + tabla + ": " + filasOrigen + " filas en origen y " + filasDestino + " en destino");
+                    correcto = false;
+                }
+            }
+        }
+        System.out.println(correcto ? "Filas comprobadas: origen y destino coinciden" : "Origen y destino NO coinciden");
+        return correcto;
+    }
+
+    private static long contar(Connection conn, String tabla) {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + ESQUEMA + "." + tabla)) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+
+    private static void mostrarResultados(List<Fase> fases) {
+        System.out.println();
+        System.out.println(String.format("%-8s %10s %12s %12s %10s %10s %14s %10s",
+                "FASE", "SEGUNDOS", "FILAS", "FILAS/S", "MB", "MB/S", "PICO_HEAP_MB", "FICHEROS"));
+        for (Fase fase : fases) {
+            double mb = fase.bytes / (1024.0 * 1024.0);
+            System.out.println(String.format(Locale.ROOT, "%-8s %10.1f %12d %12.0f %10.1f %10.1f %14.1f %10d",
+                    fase.nombre, fase.segundos(), fase.filas, fase.filas / fase.segundos(), mb, mb / fase.segundos(),
+                    fase.picoHeap / (1024.0 * 1024.0), fase.ficheros));
+        }
+    }
+
+    // Añade los resultados a RESULTADOS.tsv (con cabecera si el fichero es nuevo)
+    private static void guardarResultados(File fichero, Properties config, List<Fase> fases, boolean correcto) throws IOException {
+        boolean nuevo = !fichero.exists();
+        String fecha = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new java.util.Date());
+        String escala = "estrecha=" + config.getProperty("bench.estrecha.filas", "10000000")
+                + " ancha=" + config.getProperty("bench.ancha.filas", "200000") + "x" + config.getProperty("bench.ancha.columnas", "60")
+                + " lob_pequenos=" + config.getProperty("bench.lob.pequenos.filas", "50000") + "x" + config.getProperty("bench.lob.pequenos.bytes", "2048")
+                + " lob_grandes=" + config.getProperty("bench.lob.grandes.filas", "3") + "x" + config.getProperty("bench.lob.grandes.mb", "20") + "MB";
+        try (PrintWriter out = new PrintWriter(new FileWriter(fichero, true))) {
+            if (nuevo) out.println("#FECHA\tESCALA\tFASE\tSEGUNDOS\tFILAS\tFILAS_S\tMB\tMB_S\tPICO_HEAP_MB\tFICHEROS\tCORRECTO");
+            for (Fase fase : fases) {
+                double mb = fase.bytes / (1024.0 * 1024.0);
+                out.println(String.format(Locale.ROOT, "%s\t%s\t%s\t%.1f\t%d\t%.0f\t%.1f\t%.1f\t%.1f\t%d\t%s",
+                        fecha, escala, fase.nombre, fase.segundos(), fase.filas, fase.filas / fase.segundos(), mb, mb / fase.segundos(),
+                        fase.picoHeap / (1024.0 * 1024.0), fase.ficheros, correcto ? "SI" : "NO"));
+            }
+        }
+        System.out.println("Resultados añadidos a " + fichero);
+    }
+
+    private static void borrar(File fichero) {
+        File[] hijos = fichero.listFiles();
+        if (hijos != null) {
+            for (File hijo : hijos) borrar(hijo);
+        }
+        fichero.delete();
+    }
+}
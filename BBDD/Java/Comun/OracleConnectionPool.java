@@ -0,0 +1,271 @@
+/**
+ * OracleConnectionPool
+ *
+ * Pool de conexiones común a OracleTableExporter, OracleTableImporter y OracleScriptRunner.
+ *
+ * - Mantiene un máximo de "pool.max" sesiones y abre "pool.min" al crearse (calentamiento), de modo que
+ *   las cargas en paralelo empiezan con las sesiones ya conectadas y preparadas.
+ * - Las conexiones que entrega son envoltorios: close() deshace lo no confirmado, restaura autocommit y
+ *   el esquema actual si se cambió con setSchema (CURRENT_SCHEMA), y devuelve la sesión física al pool en
+ *   lugar de cerrarla. Un ALTER SESSION SET CURRENT_SCHEMA ejecutado como SQL no se detecta: para cambiar
+ *   de esquema hay que usar setSchema.
+ * - Con Oracle cada sesión física se abre con la caché implícita de sentencias del driver
+ *   ("pool.cache.sentencias" cursores por sesión) y un prefetch de "pool.prefetch" filas, y ejecuta una
+ *   sola vez un ALTER SESSION con los formatos NLS de fecha, timestamp y separadores numéricos
+ *   ("pool.nls.fecha", "pool.nls.timestamp", "pool.nls.numeros"). Por defecto están vacíos y la sesión
+ *   conserva los formatos del servidor; cada herramienta fija en su configuración los que necesita.
+ * - Si la URL es del tipo host:puerto:sid o //host:puerto/servicio se convierte en un descriptor con
+ *   SDU = "pool.sdu" bytes (0 = el del servidor), que reduce los viajes de red en cargas masivas.
+ *
+ * Formato único de configuración para las tres herramientas, leído con loadConfig: fichero .properties
+ * de Properties.load (ISO-8859-1, escapes con '\', continuaciones de línea y separadores '=' o ':'; en
+ * las rutas de Windows '\' se escribe '\\' o se usa '/'). La conexión se indica con jdbc.url, jdbc.user
+ * y jdbc.password. Las claves antiguas de OracleScriptRunner.ini (IP, PUERTO, SID, USUARIO y CLAVE) se
+ * aceptan como alias obsoletos, con un aviso.
+ */
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class OracleConnectionPool implements Closeable {
+
+    // jdbc:oracle:thin:@host:puerto:sid y jdbc:oracle:thin:@//host:puerto/servicio
+    private static final Pattern URL_SID = Pattern.compile("jdbc:oracle:thin:@([^:/()]+):(\\d+):(\\w+)");
+    private static final Pattern URL_SERVICIO = Pattern.compile("jdbc:oracle:thin:@//([^:/()]+):(\\d+)/([\\w.$#-]+)");
+
+    private final String url;
+    private final Properties propiedades = new Properties();
+    private final boolean oracle;
+    private final String alterSession;
+    private final int maximo;
+    private final long esperaMs;
+    private final LinkedBlockingDeque<Connection> libres = new LinkedBlockingDeque<>();
+    private int abiertas = 0;
+    private volatile boolean cerrado = false;
+    private volatile boolean avisoNls = false;
+
+    // Lee un fichero .properties y completa jdbc.url, jdbc.user y jdbc.password a partir de las claves
+    // antiguas si no están indicadas
+    public static Properties loadConfig(String fichero) throws IOException {
+        Properties config = new Properties();
+        try (InputStream input = new FileInputStream(fichero)) {
+            config.load(input);
+        }
+        return completarConexion(config);
+    }
+
+    private static Properties completarConexion(Properties config) {
+        for (String antigua : new String[]{ "IP", "PUERTO", "SID", "USUARIO", "CLAVE" }) {
+            if (config.getProperty(antigua) != null) {
+                System.err.println("Aviso: las claves IP, PUERTO, SID, USUARIO y CLAVE están obsoletas; usa jdbc.url, jdbc.user y jdbc.password");
+                break;
+            }
+        }
+        if (config.getProperty("jdbc.url") == null && config.getProperty("IP") != null) {
+            config.setProperty("jdbc.url", "jdbc:oracle:thin:@" + config.getProperty("IP") + ":"
+                    + config.getProperty("PUERTO", "1521") + ":" + config.getProperty("SID"));
+        }
+        if (config.getProperty("jdbc.user") == null && config.getProperty("USUARIO") != null) {
+            config.setProperty("jdbc.user", config.getProperty("USUARIO"));
+        }
+        if (config.getProperty("jdbc.password") == null && config.getProperty("CLAVE") != null) {
+            config.setProperty("jdbc.password", config.getProperty("CLAVE"));
+        }
+        return config;
+    }
+
+    // "minimo" y "maximo" son los valores por defecto de la herramienta; pool.min y pool.max los sustituyen
+    public OracleConnectionPool(Properties config, int minimo, int maximo) throws SQLException {
+        this.oracle = config.getProperty("jdbc.url", "").startsWith("jdbc:oracle:");
+        this.url = oracle ? aplicarSdu(config.getProperty("jdbc.url"), Integer.parseInt(config.getProperty("pool.sdu", "32767")))
+                : config.getProperty("jdbc.url");
+        this.maximo = Math.max(1, Integer.parseInt(config.getProperty("pool.max", String.valueOf(maximo))));
+        this.esperaMs = Long.parseLong(config.getProperty("pool.espera.ms", "60000"));
+
+        if (config.getProperty("jdbc.user") != null) propiedades.setProperty("user", config.getProperty("jdbc.user"));
+        if (config.getProperty("jdbc.password") != null) propiedades.setProperty("password", config.getProperty("jdbc.password"));
+        if (oracle) {
+            propiedades.setProperty("oracle.jdbc.implicitStatementCacheSize", config.getProperty("pool.cache.sentencias", "50"));
+            propiedades.setProperty("defaultRowPrefetch", config.getProperty("pool.prefetch", "500"));
+            this.alterSession = alterSession(config.getProperty("pool.nls.fecha", ""),
+                    config.getProperty("pool.nls.timestamp", ""), config.getProperty("pool.nls.numeros", ""));
+        } else {
+            this.alterSession = null;
+        }
+
+        // Calentamiento: se abren y preparan las sesiones iniciales
+        int iniciales = Math.min(this.maximo, Math.max(0, Integer.parseInt(config.getProperty("pool.min", String.valueOf(minimo)))));
+        try {
+            for (int i = 0; i < iniciales; i++) {
+                synchronized (this) {
+                    abiertas++;
+                }
+                libres.add(abrir());
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // Devuelve una sesión libre, abre una nueva si no se ha llegado al máximo o espera a que se libere una
+    public Connection getConnection() throws SQLException {
+        if (cerrado) throw new SQLException("El pool de conexiones está cerrado");
+        Connection fisica = libres.pollFirst();
+        if (fisica == null) {
+            boolean abrirNueva;
+            synchronized (this) {
+                abrirNueva = abiertas < maximo;
+                if (abrirNueva) abiertas++;
+            }
+            if (abrirNueva) {
+                fisica = abrir();
+            } else {
+                try {
+                    fisica = libres.pollFirst(esperaMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrumpido esperando una conexión del pool");
+                }
+                if (fisica == null) throw new SQLException("No hay conexiones libres en el pool tras " + esperaMs + " ms");
+            }
+        }
+        return envolver(fisica);
+    }
+
+    private Connection abrir() throws SQLException {
+        Connection conn;
+        try {
+            conn = DriverManager.getConnection(url, propiedades);
+        } catch (SQLException e) {
+            synchronized (this) {
+                abiertas--;
+            }
+            throw e;
+        }
+        if (alterSession != null) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(alterSession);
+            } catch (SQLException e) {
+                // Se avisa una sola vez: el resto de sesiones fallarán igual
+                if (!avisoNls) System.err.println("No se pudieron fijar los formatos NLS de la sesión: " + e.getMessage());
+                avisoNls = true;
+            }
+        }
+        return conn;
+    }
+
+    // Sesión física devuelta por el envoltorio: se deja limpia y se guarda, o se descarta si no es utilizable.
+    // "esquema" es el esquema actual antes del primer setSchema, o null si no se cambió.
+    private void devolver(Connection fisica, String esquema) {
+        try {
+            if (!fisica.isClosed()) {
+                if (!fisica.getAutoCommit()) {
+                    fisica.rollback();
+                    fisica.setAutoCommit(true);
+                }
+                if (esquema != null) fisica.setSchema(esquema);
+                if (!cerrado) {
+                    libres.addFirst(fisica);
+                    return;
+                }
+            }
+        } catch (SQLException e) {
+            // Sesión rota: se descarta
+        }
+        synchronized (this) {
+            abiertas--;
+        }
+        cerrar(fisica);
+    }
+
+    private Connection envolver(Connection fisica) {
+        InvocationHandler manejador = new InvocationHandler() {
+            private boolean devuelta = false;
+            private String esquemaOriginal;
+
+            @Override
+            public Object invoke(Object proxy, Method metodo, Object[] args) throws Throwable {
+                switch (metodo.getName()) {
+                    case "close":
+                        if (!devuelta) {
+                            devuelta = true;
+                            devolver(fisica, esquemaOriginal);
+                        }
+                        return null;
+                    case "setSchema":
+                        if (devuelta) throw new SQLException("La conexión ya se ha devuelto al pool");
+                        // Se recuerda el esquema de la sesión para restaurarlo al devolverla
+                        if (esquemaOriginal == null) esquemaOriginal = fisica.getSchema();
+                        fisica.setSchema((String) args[0]);
+                        return null;
+                    case "isClosed":
+                        return devuelta || fisica.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "OracleConnectionPool[" + fisica + "]";
+                    default:
+                        if (devuelta) throw new SQLException("La conexión ya se ha devuelto al pool");
+                        try {
+                            return metodo.invoke(fisica, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{ Connection.class }, manejador);
+    }
+
+    private static String aplicarSdu(String url, int sdu) {
+        if (sdu <= 0) return url;
+        Matcher sid = URL_SID.matcher(url);
+        if (sid.matches()) return descriptor(sdu, sid.group(1), sid.group(2), "SID=" + sid.group(3));
+        Matcher servicio = URL_SERVICIO.matcher(url);
+        if (servicio.matches()) return descriptor(sdu, servicio.group(1), servicio.group(2), "SERVICE_NAME=" + servicio.group(3));
+        return url;
+    }
+
+    private static String descriptor(int sdu, String host, String puerto, String destino) {
+        return "jdbc:oracle:thin:@(DESCRIPTION=(SDU=" + sdu + ")(ADDRESS=(PROTOCOL=TCP)(HOST=" + host + ")(PORT=" + puerto
+                + "))(CONNECT_DATA=(" + destino + ")))";
+    }
+
+    private static String alterSession(String fecha, String timestamp, String numeros) {
+        StringBuilder sql = new StringBuilder("ALTER SESSION SET");
+        if (!fecha.isEmpty()) sql.append(" NLS_DATE_FORMAT = '").append(fecha.replace("'", "''")).append("'");
+        if (!timestamp.isEmpty()) sql.append(" NLS_TIMESTAMP_FORMAT = '").append(timestamp.replace("'", "''")).append("'");
+        if (!numeros.isEmpty()) sql.append(" NLS_NUMERIC_CHARACTERS = '").append(numeros.replace("'", "''")).append("'");
+        return sql.length() == "ALTER SESSION SET".length() ? null : sql.toString();
+    }
+
+    private static void cerrar(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException ignored) {}
+    }
+
+    // Cierra las sesiones libres; las que están en uso se cierran al devolverse
+    @Override
+    public void close() {
+        cerrado = true;
+        Connection conn;
+        while ((conn = libres.pollFirst()) != null) {
+            synchronized (this) {
+                abiertas--;
+            }
+            cerrar(conn);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/**
+ * OracleRunMetrics
+ *
+ * Métricas comunes a OracleTableExporter, OracleTableImporter y OracleScriptRunner.
+ *
+ * Cada herramienta agrupa lo que mide bajo una clave: la tabla en el exportador y el importador, y la
+ * forma de la sentencia ("INSERT CLIENTES", "CREATE", ...) en OracleScriptRunner. Por clave se guarda:
+ * - Un histograma de latencias con cubetas en potencias de 2 microsegundos (p50, p95, p99 y máximo).
+ * - Filas, bytes, ficheros LOB y bytes LOB procesados, y errores.
+ * - Tiempo acumulado en cada fase: FETCH, ENCODE, WRITE, PARSE y EXECUTE.
+ *
+ * Al terminar se escribe un informe JSON con los totales, las fases y el detalle por clave, y un
+ * fichero de texto con las N operaciones individuales más lentas y las N claves con más tiempo.
+ *
+ * Todas las operaciones se pueden llamar desde varios hilos a la vez.
+ *
+ * Las tres herramientas se compilan con esta clase en el sourcepath:
+ *   javac -sourcepath ../Comun *.java
+ */
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+public class OracleRunMetrics {
+
+    // Fases medidas
+    public static final String FETCH = "FETCH";
+    public static final String ENCODE = "ENCODE";
+    public static final String WRITE = "WRITE";
+    public static final String PARSE = "PARSE";
+    public static final String EXECUTE = "EXECUTE";
+
+    private static final String[] FASES = { FETCH, ENCODE, WRITE, PARSE, EXECUTE };
+
+    // Longitud máxima del detalle guardado para cada operación lenta
+    private static final int MAX_DETALLE = 200;
+
+    private final String herramienta;
+    private final long inicio = System.currentTimeMillis();
+    private final long inicioNanos = System.nanoTime();
+    private final int maxLentas;
+    private final ConcurrentHashMap<String, Metrica> metricas = new ConcurrentHashMap<>();
+    private final Metrica total = new Metrica();
+
+    // Las N operaciones más lentas (montículo de mínimos: la cabeza es la más rápida de las guardadas)
+    private final PriorityQueue<Lenta> lentas = new PriorityQueue<>();
+    private volatile long umbralLentas = 0;
+
+    public OracleRunMetrics(String herramienta, int maxLentas) {
+        this.herramienta = herramienta;
+        this.maxLentas = Math.max(1, maxLentas);
+    }
+
+    // Registra la latencia de una operación (sentencia, lote, tabla...) y la añade a las lentas si procede
+    public void record(String clave, long nanos, String detalle) {
+        record(clave, nanos, () -> detalle);
+    }
+
+    // Igual que la anterior, pero el detalle solo se construye si la operación entra en las lentas
+    public void record(String clave, long nanos, Supplier<String> detalle) {
+        metrica(clave).histograma.registrar(nanos);
+        total.histograma.registrar(nanos);
+        if (nanos > umbralLentas) recordarLenta(clave, nanos, detalle);
+    }
+
+    public void addPhase(String clave, String fase, long nanos) {
+        int indice = indiceFase(fase);
+        metrica(clave).fases.addAndGet(indice, nanos);
+        total.fases.addAndGet(indice, nanos);
+    }
+
+    public void addRows(String clave, long filas) {
+        metrica(clave).filas.addAndGet(filas);
+        total.filas.addAndGet(filas);
+    }
+
+    public void addBytes(String clave, long bytes) {
+        metrica(clave).bytes.addAndGet(bytes);
+        total.bytes.addAndGet(bytes);
+    }
+
+    public void addLob(String clave, long bytes) {
+        Metrica metrica = metrica(clave);
+        metrica.lobs.incrementAndGet();
+        metrica.bytesLob.addAndGet(bytes);
+        total.lobs.incrementAndGet();
+        total.bytesLob.addAndGet(bytes);
+    }
+
+    public void addError(String clave) {
+        metrica(clave).errores.incrementAndGet();
+        total.errores.incrementAndGet();
+    }
+
+    private Metrica metrica(String clave) {
+        Metrica metrica = metricas.get(clave);
+        return metrica != null ? metrica : metricas.computeIfAbsent(clave, k -> new Metrica());
+    }
+
+    private static int indiceFase(String fase) {
+        for (int i = 0; i < FASES.length; i++) {
+            if (FASES[i].equals(fase)) return i;
+        }
+        throw new IllegalArgumentException("Fase desconocida: " + fase);
+    }
+
+    private synchronized void recordarLenta(String clave, long nanos, Supplier<String> proveedor) {
+        if (lentas.size() >= maxLentas) {
+            if (nanos <= lentas.peek().nanos) return;
+            lentas.poll();
+        }
+        String detalle = proveedor.get();
+        if (detalle != null && detalle.length() > MAX_DETALLE) detalle = detalle.substring(0, MAX_DETALLE) + "...";
+        lentas.add(new Lenta(clave, nanos, detalle));
+        if (lentas.size() >= maxLentas) umbralLentas = lentas.peek().nanos;
+    }
+
+    // Escribe el informe JSON y la lista de lentas. Los errores de escritura solo se avisan por consola
+    public void writeReport(File informe, File informeLentas) {
+        long duracion = System.nanoTime() - inicioNanos;
+        List<Map.Entry<String, Metrica>> claves = new ArrayList<>(metricas.entrySet());
+        claves.sort((a, b) -> Long.compare(b.getValue().tiempo(), a.getValue().tiempo()));
+
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(informe), StandardCharsets.UTF_8))) {
+            out.write("{\n");
+            out.write("  \"herramienta\": " + json(herramienta) + ",\n");
+            out.write("  \"inicio\": " + inicio + ",\n");
+            out.write("  \"duracion_ms\": " + ms(duracion) + ",\n");
+            out.write("  \"total\": ");
+            total.escribir(out, duracion, "  ");
+            out.write(",\n  \"claves\": {");
+            for (int i = 0; i < claves.size(); i++) {
+                Map.Entry<String, Metrica> entrada = claves.get(i);
+                out.write(i == 0 ? "\n" : ",\n");
+                out.write("    " + json(entrada.getKey()) + ": ");
+                entrada.getValue().escribir(out, entrada.getValue().tiempo(), "    ");
+            }
+            out.write(claves.isEmpty() ? "},\n" : "\n  },\n");
+            out.write("  \"lentas\": [");
+            List<Lenta> ordenadas = lentasOrdenadas();
+            for (int i = 0; i < ordenadas.size(); i++) {
+                Lenta lenta = ordenadas.get(i);
+                out.write(i == 0 ? "\n" : ",\n");
+                out.write("    { \"clave\": " + json(lenta.clave) + ", \"ms\": " + ms(lenta.nanos)
+                        + ", \"detalle\": " + json(lenta.detalle) + " }");
+            }
+            out.write(ordenadas.isEmpty() ? "]\n" : "\n  ]\n");
+            out.write("}\n");
+        } catch (IOException e) {
+            System.err.println("No se pudo escribir el informe de métricas " + informe + ": " + e.getMessage());
+        }
+
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(informeLentas), StandardCharsets.UTF_8))) {
+            out.println("# " + herramienta + " - " + ms(duracion) + " ms");
+            out.println();
+            out.println("# Operaciones más lentas");
+            out.println(String.format("%12s  %-30s  %s", "MS", "CLAVE", "DETALLE"));
+            for (Lenta lenta : lentasOrdenadas()) {
+                out.println(String.format("%12s  %-30s  %s", ms(lenta.nanos), lenta.clave,
+                        lenta.detalle == null ? "" : lenta.detalle.replaceAll("\\s+", " ")));
+            }
+            out.println();
+            out.println("# Claves con más tiempo");
+            out.println(String.format("%12s  %11s  %10s  %10s  %12s  %s", "MS", "OPERACIONES", "P95_MS", "FILAS", "BYTES", "CLAVE"));
+            for (int i = 0; i < Math.min(maxLentas, claves.size()); i++) {
+                Metrica metrica = claves.get(i).getValue();
+                out.println(String.format("%12s  %11d  %10s  %10d  %12d  %s", ms(metrica.tiempo()), metrica.histograma.cuenta(),
+                        ms(metrica.histograma.percentil(0.95)), metrica.filas.get(), metrica.bytes.get(), claves.get(i).getKey()));
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo escribir la lista de lentas " + informeLentas + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized List<Lenta> lentasOrdenadas() {
+        List<Lenta> ordenadas = new ArrayList<>(lentas);
+        ordenadas.sort(Collections.reverseOrder());
+        return ordenadas;
+    }
+
+    private static String ms(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String json(String texto) {
+        if (texto == null) return "null";
+        StringBuilder sb = new StringBuilder(texto.length() + 2).append('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // Contadores de una clave
+    private static class Metrica {
+        final Histograma histograma = new Histograma();
+        final AtomicLong filas = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong lobs = new AtomicLong();
+        final AtomicLong bytesLob = new AtomicLong();
+        final AtomicLong errores = new AtomicLong();
+        final AtomicLongArray fases = new AtomicLongArray(FASES.length);
+
+        // Tiempo de la clave: las latencias registradas o, si no hay, la suma de sus fases
+        long tiempo() {
+            long suma = histograma.suma.get();
+            if (suma > 0) return suma;
+            for (int i = 0; i < FASES.length; i++) suma += fases.get(i);
+            return suma;
+        }
+
+        // "duracion" es la base de los ritmos por segundo
+        void escribir(Writer out, long duracion, String sangria) throws IOException {
+            double segundos = Math.max(duracion, 1) / 1_000_000_000.0;
+            out.write("{\n");
+            out.write(sangria + "  \"operaciones\": " + histograma.cuenta() + ",\n");
+            out.write(sangria + "  \"errores\": " + errores.get() + ",\n");
+            out.write(sangria + "  \"filas\": " + filas.get() + ",\n");
+            out.write(sangria + "  \"bytes\": " + bytes.get() + ",\n");
+            out.write(sangria + "  \"lobs\": " + lobs.get() + ",\n");
+            out.write(sangria + "  \"bytes_lob\": " + bytesLob.get() + ",\n");
+            out.write(sangria + "  \"filas_por_segundo\": " + String.format(Locale.ROOT, "%.1f", filas.get() / segundos) + ",\n");
+            out.write(sangria + "  \"bytes_por_segundo\": " + String.format(Locale.ROOT, "%.1f", (bytes.get() + bytesLob.get()) / segundos) + ",\n");
+            out.write(sangria + "  \"latencia_ms\": { \"total\": " + ms(histograma.suma.get())
+                    + ", \"p50\": " + ms(histograma.percentil(0.50))
+                    + ", \"p95\": " + ms(histograma.percentil(0.95))
+                    + ", \"p99\": " + ms(histograma.percentil(0.99))
+                    + ", \"max\": " + ms(histograma.maximo.get()) + " },\n");
+            out.write(sangria + "  \"fases_ms\": {");
+            for (int i = 0; i < FASES.length; i++) {
+                out.write((i == 0 ? " " : ", ") + json(FASES[i]) + ": " + ms(fases.get(i)));
+            }
+            out.write(" }\n" + sangria + "}");
+        }
+    }
+
+    // Histograma de latencias en cubetas de potencias de 2 microsegundos: la cubeta i cubre [2^(i-1), 2^i) µs
+    private static class Histograma {
+        private static final int CUBETAS = 40;
+
+        final AtomicLongArray cubetas = new AtomicLongArray(CUBETAS);
+        final AtomicLong suma = new AtomicLong();
+        final AtomicLong maximo = new AtomicLong();
+
+        void registrar(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            int cubeta = Math.min(CUBETAS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            cubetas.incrementAndGet(cubeta);
+            suma.addAndGet(nanos);
+            long actual;
+            while (nanos > (actual = maximo.get()) && !maximo.compareAndSet(actual, nanos)) { }
+        }
+
+        long cuenta() {
+            long cuenta = 0;
+            for (int i = 0; i < CUBETAS; i++) cuenta += cubetas.get(i);
+            return cuenta;
+        }
+
+        // Límite superior de la cubeta que contiene el percentil, acotado por el máximo observado
+        long percentil(double p) {
+            long cuenta = cuenta();
+            if (cuenta == 0) return 0;
+            long objetivo = (long) Math.ceil(cuenta * p);
+            long acumulado = 0;
+            for (int i = 0; i < CUBETAS; i++) {
+                acumulado += cubetas.get(i);
+                if (acumulado >= objetivo) return Math.min((1L << i) * 1000, maximo.get());
+            }
+            return maximo.get();
+        }
+    }
+
+    private static class Lenta implements Comparable<Lenta> {
+        final String clave;
+        final long nanos;
+        final String detalle;
+
+        Lenta(String clave, long nanos, String detalle) {
+            this.clave = clave;
+            this.nanos = nanos;
+            this.detalle = detalle;
+        }
+
+        @Override
+        public int compareTo(Lenta otra) {
+            return Long.compare(nanos, otra.nanos);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/**
+ * OracleSchemaCopier
+ *
+ * Copia un esquema de una base de datos Oracle a otra sin ficheros intermedios. Es el equivalente en una
+ * sola pasada de OracleTableExporter seguido de OracleTableImporter, y sigue sus mismas fases:
+ * 1. DDL de tablas
+ * 2. Secuencias
+ * 3. Datos
+ * 4. Funciones
+ * 5. Triggers
+ *
+ * El DDL se obtiene del origen con DBMS_METADATA.GET_DDL y se ejecuta en el destino. Si el esquema de
+ * destino es otro, el origen genera el DDL sin esquema (transformación EMIT_SCHEMA=FALSE) y el destino lo
+ * ejecuta con CURRENT_SCHEMA = esquema de destino; el PL/SQL que nombre el esquema de origen de forma
+ * explícita no se modifica.
+ *
+ * Los datos se leen del ResultSet del origen y se insertan en el destino con un PreparedStatement por
+ * tabla, en lotes de "copia.lote" filas que se confirman cada "copia.commit.filas" filas. Los CLOB y BLOB no se
+ * cargan en memoria: se enlazan como streams del origen al destino y esas filas se ejecutan de una en una.
+ * Si un lote falla se deshace hasta el savepoint previo y se repite fila a fila; las filas que fallan
+ * se escriben en "copia.rechazos" (por defecto OracleSchemaCopier_rechazados.sql) con el error como
+ * comentario y los valores con el mismo formato que los INSERT del exportador, igual que los rechazos de
+ * OracleTableImporter, y la copia continúa.
+ *
+ * Configuración: OracleTableExporter.properties. jdbc.* es el origen y copia.jdbc.url, copia.jdbc.user,
+ * copia.jdbc.password y copia.jdbc.schema (por defecto el mismo esquema) el destino; el resto de claves
+ * "pool.*" se aplican a ambos. Con "copia.hilos" > 1 se copian varias tablas a la vez, cada una con
+ * su propia pareja de sesiones. Al terminar se escribe el informe de métricas ("copia.metricas.informe"
+ * y "copia.metricas.lentas").
+ */
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class OracleSchemaCopier {
+    private static final String CONFIG_FILE = "OracleTableExporter.properties";
+
+    private static OracleConnectionPool origen;
+    private static OracleConnectionPool destino;
+    private static OracleRunMetrics metricas;
+    private static PrintWriter rechazos;
+    private static int tamanoLote;
+    private static int filasPorCommit;
+
+    public static void main(String[] args) {
+        Properties config = loadConfig();
+        if (config == null) return;
+        copiar(config);
+    }
+
+    // Copia completa con la configuración indicada
+    static void copiar(Properties config) {
+        String user = config.getProperty("jdbc.user");
+        String schema = config.getProperty("jdbc.schema", user).toUpperCase();
+        String schemaDestino = config.getProperty("copia.jdbc.schema", schema).toUpperCase();
+        String encoding = config.getProperty("encoding", "UTF-8");
+        int hilos = Math.max(1, Integer.parseInt(config.getProperty("copia.hilos", "1")));
+        tamanoLote = Math.max(1, Integer.parseInt(config.getProperty("copia.lote", "1000")));
+        filasPorCommit = Math.max(1, Integer.parseInt(config.getProperty("copia.commit.filas", "10000")));
+        metricas = new OracleRunMetrics("OracleSchemaCopier", Integer.parseInt(config.getProperty("metricas.top", "20")));
+
+        if (config.getProperty("copia.jdbc.url") == null) {
+            System.err.println("Falta la conexión de destino (copia.jdbc.url) en " + CONFIG_FILE);
+            return;
+        }
+        Properties configDestino = new Properties();
+        configDestino.putAll(config);
+        configDestino.setProperty("jdbc.url", config.getProperty("copia.jdbc.url"));
+        configDestino.setProperty("jdbc.user", config.getProperty("copia.jdbc.user", ""));
+        configDestino.setProperty("jdbc.password", config.getProperty("copia.jdbc.password", ""));
+
+        try (OracleConnectionPool poolOrigen = new OracleConnectionPool(config, hilos + 1, hilos + 1);
+             OracleConnectionPool poolDestino = new OracleConnectionPool(configDestino, hilos + 1, hilos + 1);
+             Connection connOrigen = poolOrigen.getConnection();
+             Connection connDestino = poolDestino.getConnection();
+             PrintWriter ficheroRechazos = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                     new FileOutputStream(config.getProperty("copia.rechazos", "OracleSchemaCopier_rechazados.sql")), encoding)))) {
+            origen = poolOrigen;
+            destino = poolDestino;
+            rechazos = ficheroRechazos;
+
+            if (!schemaDestino.equals(schema)) remapearEsquema(connOrigen, connDestino, schemaDestino);
+
+            List<String> tablas = new ArrayList<>();
+            try (ResultSet rs = connOrigen.getMetaData().getTables(null, schema, "%", new String[]{"TABLE"})) {
+                while (rs.next()) tablas.add(rs.getString("TABLE_NAME"));
+            }
+
+            // 1. DDL de tablas
+            System.out.println("Copiando DDL de tablas...");
+            for (String tabla : tablas) copiarDDL(connOrigen, connDestino, "TABLE", tabla, schema);
+
+            // 2. Secuencias
+            System.out.println("Copiando secuencias...");
+            for (String secuencia : nombres(connOrigen, "SELECT SEQUENCE_NAME FROM ALL_SEQUENCES WHERE SEQUENCE_OWNER = ?", schema)) {
+                copiarDDL(connOrigen, connDestino, "SEQUENCE", secuencia, schema);
+            }
+
+            // 3. Datos
+            System.out.println("Copiando datos...");
+            copiarDatos(tablas, schema, schemaDestino, hilos);
+
+            // 4. Funciones
+            System.out.println("Copiando funciones...");
+            for (String funcion : nombres(connOrigen, "SELECT OBJECT_NAME FROM ALL_OBJECTS WHERE OWNER = ? AND OBJECT_TYPE = 'FUNCTION'", schema)) {
+                copiarDDL(connOrigen, connDestino, "FUNCTION", funcion, schema);
+            }
+
+            // 5. Triggers
+            System.out.println("Copiando triggers...");
+            for (String trigger : nombres(connOrigen, "SELECT TRIGGER_NAME FROM ALL_TRIGGERS WHERE OWNER = ?", schema)) {
+                copiarDDL(connOrigen, connDestino, "TRIGGER", trigger, schema);
+            }
+
+            System.out.println("Copia finalizada.");
+        } catch (SQLException | IOException e) {
+            System.err.println("Error de conexión o copia: " + e.getMessage());
+        } finally {
+            origen = null;
+            destino = null;
+            rechazos = null;
+            metricas.writeReport(new File(config.getProperty("copia.metricas.informe", "OracleSchemaCopier.metricas.json")),
+                    new File(config.getProperty("copia.metricas.lentas", "OracleSchemaCopier.lentas.txt")));
+        }
+    }
+
+    private static List<String> nombres(Connection conn, String sql, String schema) {
+        List<String> nombres = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, schema);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) nombres.add(rs.getString(1));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error consultando el diccionario del origen: " + e.getMessage());
+        }
+        return nombres;
+    }
+
+    // DDL sin esquema en el origen y esquema actual = destino en el destino. Si falla se aborta la copia,
+    // porque el DDL acabaría en el esquema de origen
+    private static void remapearEsquema(Connection connOrigen, Connection connDestino, String schemaDestino) throws SQLException {
+        try (Statement stmt = connOrigen.createStatement()) {
+            stmt.execute("BEGIN DBMS_METADATA.SET_TRANSFORM_PARAM(DBMS_METADATA.SESSION_TRANSFORM, 'EMIT_SCHEMA', FALSE); END;");
+        }
+        // setSchema (ALTER SESSION SET CURRENT_SCHEMA en Oracle) para que el pool lo restaure al devolver la sesión
+        connDestino.setSchema(schemaDestino);
+    }
+
+    private static void copiarDDL(Connection connOrigen, Connection connDestino, String tipo, String nombre, String schema) {
+        long inicio = System.nanoTime();
+        String ddl = OracleTableExporter.getDDL(connOrigen, tipo, nombre, schema);
+        if (ddl == null) return;
+        try (Statement stmt = connDestino.createStatement()) {
+            stmt.execute(ddl);
+            System.out.println("Copiado: " + tipo + " " + nombre);
+        } catch (SQLException e) {
+            metricas.addError(tipo + "_DDL");
+            System.err.println("Error copiando " + tipo + " " + nombre + ": " + e.getMessage());
+        }
+        long duracion = System.nanoTime() - inicio;
+        metricas.addPhase(tipo + "_DDL", OracleRunMetrics.EXECUTE, duracion);
+        metricas.record(tipo + "_DDL", duracion, nombre);
+    }
+
+    // Copia las tablas, "hilos" a la vez, cada una con sus propias sesiones de origen y destino
+    private static void copiarDatos(List<String> tablas, String schema, String schemaDestino, int hilos) {
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        try {
+            Map<String, Future<Void>> resultados = new LinkedHashMap<>();
+            for (String tabla : tablas) {
+                resultados.put(tabla, executor.submit(() -> {
+                    try (Connection connOrigen = origen.getConnection();
+                         Connection connDestino = destino.getConnection()) {
+                        copiarTabla(connOrigen, connDestino, schema, schemaDestino, tabla);
+                    }
+                    return null;
+                }));
+            }
+            for (Map.Entry<String, Future<Void>> resultado : resultados.entrySet()) {
+                try {
+                    resultado.getValue().get();
+                } catch (ExecutionException e) {
+                    metricas.addError(resultado.getKey());
+                    System.err.println("Error copiando la tabla " + resultado.getKey() + ": " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void copiarTabla(Connection connOrigen, Connection connDestino, String schema, String schemaDestino, String tabla)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        long lectura = 0;
+        long filas = 0;
+        int[] resultado = new int[2]; // filas correctas y rechazadas
+        connDestino.setAutoCommit(false);
+        try (Statement stmt = connOrigen.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM " + schema + "." + tabla)) {
+            ResultSetMetaData meta = rs.getMetaData();
+            int columnas = meta.getColumnCount();
+            int[] tipos = new int[columnas];
+            StringBuilder sql = new StringBuilder("INSERT INTO " + schemaDestino + "." + tabla + " (");
+            for (int i = 0; i < columnas; i++) {
+                tipos[i] = meta.getColumnType(i + 1);
+                if (i > 0) sql.append(", ");
+                sql.append('"').append(meta.getColumnName(i + 1)).append('"');
+            }
+            sql.append(") VALUES (");
+            for (int i = 0; i < columnas; i++) sql.append(i == 0 ? "?" : ", ?");
+            sql.append(")");
+
+            try (PreparedStatement ps = connDestino.prepareStatement(sql.toString())) {
+                List<Object[]> lote = new ArrayList<>();
+                int sinConfirmar = 0;
+                long lap = System.nanoTime();
+                while (rs.next()) {
+                    Object[] fila = new Object[columnas];
+                    boolean conLob = false;
+                    for (int i = 0; i < columnas; i++) {
+                        if (tipos[i] == Types.CLOB || tipos[i] == Types.NCLOB) {
+                            fila[i] = rs.getClob(i + 1);
+                        } else if (tipos[i] == Types.BLOB) {
+                            fila[i] = rs.getBlob(i + 1);
+                        } else {
+                            fila[i] = rs.getObject(i + 1);
+                            continue;
+                        }
+                        if (fila[i] != null) conLob = true;
+                    }
+                    lectura += System.nanoTime() - lap;
+                    filas++;
+
+                    if (conLob) {
+                        // Los LOB se leen del origen mientras se escriben en el destino: la fila va sola
+                        ejecutarLote(connDestino, ps, lote, tipos, schemaDestino, tabla, resultado);
+                        ejecutarFila(connDestino, ps, fila, tipos, schemaDestino, tabla, resultado);
+                    } else {
+                        enlazar(ps, fila, tipos, tabla);
+                        ps.addBatch();
+                        lote.add(fila);
+                        if (lote.size() >= tamanoLote) ejecutarLote(connDestino, ps, lote, tipos, schemaDestino, tabla, resultado);
+                    }
+                    if (++sinConfirmar >= filasPorCommit) {
+                        ejecutarLote(connDestino, ps, lote, tipos, schemaDestino, tabla, resultado);
+                        confirmar(connDestino, tabla);
+                        sinConfirmar = 0;
+                    }
+                    lap = System.nanoTime();
+                }
+                ejecutarLote(connDestino, ps, lote, tipos, schemaDestino, tabla, resultado);
+                confirmar(connDestino, tabla);
+            }
+        } catch (SQLException | RuntimeException e) {
+            try {
+                connDestino.rollback();
+            } catch (SQLException ignored) {}
+            throw e;
+        } finally {
+            rechazos.flush();
+            metricas.addPhase(tabla, OracleRunMetrics.FETCH, lectura);
+            metricas.addRows(tabla, resultado[0]);
+            metricas.record(tabla, System.nanoTime() - inicio, "COPIA " + tabla + " (" + filas + " filas)");
+        }
+        System.out.println("Copiada tabla " + tabla + ": " + resultado[0] + " filas"
+                + (resultado[1] > 0 ? ", " + resultado[1] + " rechazadas" : ""));
+    }
+
+    private static void enlazar(PreparedStatement ps, Object[] fila, int[] tipos, String tabla) throws SQLException {
+        for (int i = 0; i < fila.length; i++) {
+            Object valor = fila[i];
+            if (valor == null) {
+                ps.setNull(i + 1, tipos[i]);
+            } else if (valor instanceof Clob) {
+                Clob clob = (Clob) valor;
+                long longitud = clob.length();
+                ps.setCharacterStream(i + 1, clob.getCharacterStream(), longitud);
+                metricas.addLob(tabla, longitud);
+            } else if (valor instanceof Blob) {
+                Blob blob = (Blob) valor;
+                long longitud = blob.length();
+                ps.setBinaryStream(i + 1, blob.getBinaryStream(), longitud);
+                metricas.addLob(tabla, longitud);
+            } else {
+                ps.setObject(i + 1, valor);
+            }
+        }
+    }
+
+    // Ejecuta el lote pendiente; si falla, deshace hasta el savepoint y repite las filas de una en una
+    private static void ejecutarLote(Connection conn, PreparedStatement ps, List<Object[]> lote, int[] tipos, String schemaDestino,
+            String tabla, int[] resultado) throws SQLException {
+        if (lote.isEmpty()) return;
+        long inicio = System.nanoTime();
+        Savepoint savepoint = conn.setSavepoint();
+        try {
+            ps.executeBatch();
+            resultado[0] += lote.size();
+        } catch (SQLException e) {
+            if (esErrorDeConexion(conn, e)) throw e;
+            ps.clearBatch();
+            conn.rollback(savepoint);
+            for (Object[] fila : lote) ejecutarFila(conn, ps, fila, tipos, schemaDestino, tabla, resultado);
+        } finally {
+            lote.clear();
+            metricas.addPhase(tabla, OracleRunMetrics.EXECUTE, System.nanoTime() - inicio);
+        }
+    }
+
+    private static void ejecutarFila(Connection conn, PreparedStatement ps, Object[] fila, int[] tipos, String schemaDestino,
+            String tabla, int[] resultado) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            enlazar(ps, fila, tipos, tabla);
+            ps.executeUpdate();
+            resultado[0]++;
+        } catch (SQLException e) {
+            if (esErrorDeConexion(conn, e)) throw e;
+            resultado[1]++;
+            metricas.addError(tabla);
+            rechazar(schemaDestino, tabla, fila, e.getMessage());
+        } finally {
+            metricas.addPhase(tabla, OracleRunMetrics.EXECUTE, System.nanoTime() - inicio);
+        }
+    }
+
+    private static void confirmar(Connection conn, String tabla) throws SQLException {
+        long inicio = System.nanoTime();
+        conn.commit();
+        metricas.addPhase(tabla, OracleRunMetrics.EXECUTE, System.nanoTime() - inicio);
+    }
+
+    // Errores de la sesión (SQLSTATE 08xxx o conexión cerrada): se abandona la tabla
+    private static boolean esErrorDeConexion(Connection conn, SQLException e) throws SQLException {
+        return (e.getSQLState() != null && e.getSQLState().startsWith("08")) || conn.isClosed();
+    }
+
+    // Escribe la fila rechazada como INSERT, precedida del error como comentario. Los LOB no se incluyen
+    private static void rechazar(String schemaDestino, String tabla, Object[] fila, String error) {
+        StringBuilder insert = new StringBuilder("INSERT INTO " + schemaDestino + "." + tabla + " VALUES (");
+        for (int i = 0; i < fila.length; i++) {
+            Object valor = fila[i];
+            if (i > 0) insert.append(", ");
+            if (valor instanceof Clob || valor instanceof Blob) {
+                insert.append("NULL /* LOB omitido */");
+            } else {
+                insert.append(OracleTableExporter.sqlLiteral(valor));
+            }
+        }
+        insert.append(");");
+        synchronized (rechazos) {
+            for (String linea : String.valueOf(error).split("\\r?\\n")) rechazos.println("-- " + linea);
+            rechazos.println(insert);
+        }
+    }
+
+    private static Properties loadConfig() {
+        try {
+            return OracleConnectionPool.loadConfig(CONFIG_FILE);
+        } catch (IOException e) {
+            System.err.println("No se pudo cargar el archivo de configuración " + CONFIG_FILE);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/**
+ * OracleTableChecksums
+ *
+ * Sumas de control por tabla y por tramo para comprobar, tras una importación, que el destino tiene
+ * exactamente los datos exportados sin repetir la exportación ni hacer COUNT(*) a mano.
+ *
+ * - Cada fila cae en uno de "export.checksums.tramos" tramos según ORA_HASH de su clave primaria (o de
+ *   la primera columna si la tabla no tiene clave), y tiene un hash de 32 bits que es la suma de
+ *   ORA_HASH de cada columna, con la posición de la columna como semilla. Las columnas se pasan a texto
+ *   con formatos explícitos e independientes de NLS (TO_CHAR con 'TM9' y '.' decimal, fechas
+ *   'YYYY-MM-DD HH24:MI:SS[.FF9]', RAWTOHEX); de los LOB solo entra la longitud.
+ * - La suma de control de un tramo son sus filas y la suma de los hashes de fila módulo 2^32, que no
+ *   depende del orden de lectura. Aparte se suma el SHA-256 (32 primeros bits) del contenido de cada LOB.
+ *
+ * OracleTableExporter pide el tramo y el hash de fila al servidor en la misma consulta con la que
+ * exporta cada tabla, calcula el SHA-256 de los LOB que ya está leyendo y escribe CHECKSUMS.txt en la
+ * carpeta de exportación: por tabla una línea "TABLA * FILAS SUMA SUMA_LOB TRAMOS CLAVE" con el total y
+ * una línea "TABLA TRAMO FILAS SUMA SUMA_LOB" por tramo no vacío, separadas por tabuladores.
+ *
+ * Verificación (main de esta clase, o "import.verificar=SI" al final de OracleTableImporter): con la
+ * conexión jdbc.* de OracleTableExporter.properties calcula en el servidor, con una sola consulta
+ * agrupada por tramo, las mismas sumas sobre cada tabla del destino. Las tablas se verifican en paralelo
+ * con "verificacion.hilos" sesiones y solo se informa de los tramos que no coinciden. El contenido de los
+ * LOB (no solo su longitud) se compara con "verificacion.lobs=SI", que sí los lee en el cliente.
+ */
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class OracleTableChecksums {
+    static final String CHECKSUMS_FILE = "CHECKSUMS.txt";
+    private static final String CONFIG_FILE = "OracleTableExporter.properties";
+    private static final long MODULO = 4294967296L;
+
+    // Sumas de una tabla: tramo -> {filas, suma de hashes de fila, suma de hashes de LOB}
+    static class Tabla {
+        final String nombre;
+        final int tramos;
+        final List<String> clave;
+        final Map<Integer, long[]> sumas = new TreeMap<>();
+        // Expresiones SQL del tramo y del hash de fila, y columnas LOB con su posición en la tabla
+        // (solo si se ha preparado contra una base de datos)
+        String tramoSql;
+        String filaSql;
+        final Map<String, Integer> columnasLob = new LinkedHashMap<>();
+        private MessageDigest sha256;
+
+        Tabla(String nombre, int tramos, List<String> clave) {
+            this.nombre = nombre;
+            this.tramos = tramos;
+            this.clave = clave;
+        }
+
+        // Columnas que se añaden a la consulta de la tabla: tramo y hash de fila
+        String columnasSql() {
+            return tramoSql + " AS CHK_TRAMO, " + filaSql + " AS CHK_FILA";
+        }
+
+        void anadirFila(int tramo, long hashFila) {
+            long[] suma = tramo(tramo);
+            suma[0]++;
+            suma[1] = (suma[1] + hashFila) % MODULO;
+        }
+
+        // La posición de la columna entra en el hash para que dos LOB intercambiados no sumen lo mismo
+        void anadirLob(int tramo, int columna, byte[] contenido) {
+            if (sha256 == null) {
+                try {
+                    sha256 = MessageDigest.getInstance("SHA-256");
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            sha256.update((byte) columna);
+            byte[] hash = sha256.digest(contenido);
+            long valor = ((hash[0] & 0xFFL) << 24) | ((hash[1] & 0xFFL) << 16) | ((hash[2] & 0xFFL) << 8) | (hash[3] & 0xFFL);
+            long[] suma = tramo(tramo);
+            suma[2] = (suma[2] + valor) % MODULO;
+        }
+
+        private long[] tramo(int tramo) {
+            long[] suma = sumas.get(tramo);
+            if (suma == null) {
+                suma = new long[3];
+                sumas.put(tramo, suma);
+            }
+            return suma;
+        }
+
+        long[] total() {
+            long[] total = new long[3];
+            for (long[] suma : sumas.values()) {
+                total[0] += suma[0];
+                total[1] = (total[1] + suma[1]) % MODULO;
+                total[2] = (total[2] + suma[2]) % MODULO;
+            }
+            return total;
+        }
+
+        void escribir(Writer writer) throws IOException {
+            long[] total = total();
+            writer.write(nombre + "\t*\t" + total[0] + "\t" + total[1] + "\t" + total[2] + "\t" + tramos + "\t" + String.join(",", clave) + "\n");
+            for (Map.Entry<Integer, long[]> tramo : sumas.entrySet()) {
+                long[] suma = tramo.getValue();
+                writer.write(nombre + "\t" + tramo.getKey() + "\t" + suma[0] + "\t" + suma[1] + "\t" + suma[2] + "\n");
+            }
+        }
+    }
+
+    // Prepara las expresiones de una tabla a partir de sus columnas. Si "clave" es null se toma la clave
+    // primaria o, si no tiene, la primera columna que se pueda pasar a texto
+    static Tabla preparar(Connection conn, String schema, String nombre, List<String> clave, int tramos) throws SQLException {
+        Map<String, String> textos = new LinkedHashMap<>();
+        Map<String, Integer> columnasLob = new LinkedHashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM " + schema + "." + nombre + " WHERE 1 = 0")) {
+            ResultSetMetaData meta = rs.getMetaData();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                String columna = meta.getColumnName(i);
+                textos.put(columna, columnaComoTexto(columna, meta.getColumnType(i), meta.getColumnTypeName(i)));
+                if (esLob(meta.getColumnType(i))) columnasLob.put(columna, i);
+            }
+        }
+
+        if (clave == null) {
+            clave = new ArrayList<>();
+            try (ResultSet rs = conn.getMetaData().getPrimaryKeys(null, schema, nombre)) {
+                SortedMap<Short, String> primaria = new TreeMap<>();
+                while (rs.next()) primaria.put(rs.getShort("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+                clave.addAll(primaria.values());
+            }
+            if (clave.isEmpty()) {
+                for (Map.Entry<String, String> columna : textos.entrySet()) {
+                    if (columna.getValue() != null && !columnasLob.containsKey(columna.getKey())) {
+                        clave.add(columna.getKey());
+                        break;
+                    }
+                }
+            }
+        }
+
+        Tabla tabla = new Tabla(nombre, tramos, clave);
+        List<String> textosClave = new ArrayList<>();
+        for (String columna : clave) textosClave.add(textos.get(columna));
+        tabla.tramoSql = textosClave.isEmpty() ? "0" : "MOD(" + sumaHashes(textosClave) + ", " + tramos + ")";
+        tabla.filaSql = "MOD(" + sumaHashes(new ArrayList<>(textos.values())) + ", " + MODULO + ")";
+        tabla.columnasLob.putAll(columnasLob);
+        return tabla;
+    }
+
+    // NVL(ORA_HASH(texto, 2^32 - 1, posición), 0) + ... ; las columnas que no se pueden pasar a texto no cuentan
+    private static String sumaHashes(List<String> textos) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < textos.size(); i++) {
+            if (textos.get(i) == null) continue;
+            if (sql.length() > 0) sql.append(" + ");
+            sql.append("NVL(ORA_HASH(").append(textos.get(i)).append(", ").append(MODULO - 1).append(", ").append(i + 1).append("), 0)");
+        }
+        return sql.length() == 0 ? "0" : sql.toString();
+    }
+
+    // Expresión SQL con el valor de la columna como texto, con formatos que no dependen de NLS. Los LOB
+    // se representan por su longitud. null si el tipo no se puede pasar a texto (LONG, objetos...)
+    static String columnaComoTexto(String columna, int tipo, String nombreTipo) {
+        String c = "\"" + columna + "\"";
+        switch (tipo) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+                return c;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+            case 100: // BINARY_FLOAT
+            case 101: // BINARY_DOUBLE
+                return "TO_CHAR(" + c + ", 'TM9', 'NLS_NUMERIC_CHARACTERS=''.,''')";
+            case Types.DATE:
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+            case -101: // TIMESTAMP WITH TIME ZONE
+            case -102: // TIMESTAMP WITH LOCAL TIME ZONE
+                if ("DATE".equalsIgnoreCase(nombreTipo)) return "TO_CHAR(" + c + ", 'YYYY-MM-DD HH24:MI:SS')";
+                if (nombreTipo.toUpperCase().contains("TIME ZONE")) return "TO_CHAR(" + c + ", 'YYYY-MM-DD HH24:MI:SS.FF9 TZH:TZM')";
+                return "TO_CHAR(" + c + ", 'YYYY-MM-DD HH24:MI:SS.FF9')";
+            case Types.BINARY:
+            case Types.VARBINARY:
+                return "RAWTOHEX(" + c + ")";
+            case Types.CLOB:
+            case Types.NCLOB:
+                return "TO_CHAR(LENGTH(" + c + "), 'TM9')";
+            case Types.BLOB:
+                return "TO_CHAR(DBMS_LOB.GETLENGTH(" + c + "), 'TM9')";
+            default:
+                return null;
+        }
+    }
+
+    static boolean esLob(int tipo) {
+        return tipo == Types.CLOB || tipo == Types.NCLOB || tipo == Types.BLOB;
+    }
+
+    // Contenido de un LOB tal y como lo hashea el exportador: CLOB en la codificación de la exportación
+    static byte[] contenidoLob(ResultSet rs, int columna, int tipo, String encoding) throws SQLException, IOException {
+        if (tipo == Types.BLOB) {
+            Blob blob = rs.getBlob(columna);
+            if (blob == null) return null;
+            try (InputStream in = blob.getBinaryStream()) {
+                return leer(in);
+            }
+        }
+        Clob clob = rs.getClob(columna);
+        if (clob == null) return null;
+        StringBuilder texto = new StringBuilder();
+        try (Reader reader = clob.getCharacterStream()) {
+            char[] buffer = new char[8192];
+            int leidos;
+            while ((leidos = reader.read(buffer)) != -1) texto.append(buffer, 0, leidos);
+        }
+        return texto.toString().getBytes(encoding);
+    }
+
+    private static byte[] leer(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int leidos;
+        while ((leidos = in.read(buffer)) != -1) out.write(buffer, 0, leidos);
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) {
+        Properties config;
+        try {
+            config = OracleConnectionPool.loadConfig(CONFIG_FILE);
+        } catch (IOException e) {
+            System.err.println("No se pudo cargar el archivo de configuración " + CONFIG_FILE);
+            return;
+        }
+        verificar(config);
+    }
+
+    // Compara las sumas de CHECKSUMS.txt con las del esquema de destino. Devuelve true si todo coincide
+    static boolean verificar(Properties config) {
+        String user = config.getProperty("jdbc.user");
+        String schema = config.getProperty("jdbc.schema", user);
+        String encoding = config.getProperty("encoding", "UTF-8");
+        int hilos = Math.max(1, Integer.parseInt(config.getProperty("verificacion.hilos", "4")));
+        boolean lobs = "SI".equalsIgnoreCase(config.getProperty("verificacion.lobs", "NO"));
+        File fichero = new File(config.getProperty("export.dir", schema), CHECKSUMS_FILE);
+
+        Map<String, Tabla> esperadas;
+        try {
+            esperadas = leerSumas(fichero, encoding);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("No se pudo leer " + fichero + ": " + e.getMessage());
+            return false;
+        }
+
+        System.out.println("Verificando " + esperadas.size() + " tablas con " + hilos + " sesiones...");
+        long inicio = System.nanoTime();
+        int diferencias = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        try (OracleConnectionPool pool = new OracleConnectionPool(config, hilos, hilos)) {
+            Map<String, Future<List<String>>> resultados = new LinkedHashMap<>();
+            for (Tabla esperada : esperadas.values()) {
+                resultados.put(esperada.nombre, executor.submit(() -> {
+                    try (Connection conn = pool.getConnection()) {
+                        return comparar(conn, schema, esperada, lobs, encoding);
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<List<String>>> resultado : resultados.entrySet()) {
+                List<String> mensajes;
+                try {
+                    mensajes = resultado.getValue().get();
+                } catch (ExecutionException e) {
+                    mensajes = Collections.singletonList(resultado.getKey() + ": no se pudo verificar: " + e.getCause().getMessage());
+                }
+                for (String mensaje : mensajes) System.err.println(mensaje);
+                diferencias += mensajes.size();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error de conexión: " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        System.out.println(String.format(Locale.ROOT, "Verificación terminada en %.1f s: %s", (System.nanoTime() - inicio) / 1e9,
+                diferencias == 0 ? "todos los tramos coinciden" : diferencias + " diferencias"));
+        return diferencias == 0;
+    }
+
+    // Calcula en el destino las sumas de una tabla y devuelve un mensaje por cada tramo distinto
+    private static List<String> comparar(Connection conn, String schema, Tabla esperada, boolean lobs, String encoding)
+            throws SQLException, IOException {
+        Tabla destino = preparar(conn, schema, esperada.nombre, esperada.clave, esperada.tramos);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT CHK_TRAMO, COUNT(*), MOD(SUM(CHK_FILA), " + MODULO + ") FROM (SELECT "
+                     + destino.columnasSql() + " FROM " + schema + "." + esperada.nombre + ") GROUP BY CHK_TRAMO")) {
+            while (rs.next()) {
+                long[] suma = destino.tramo(rs.getInt(1));
+                suma[0] = rs.getLong(2);
+                suma[1] = rs.getLong(3);
+            }
+        }
+        if (lobs && !destino.columnasLob.isEmpty()) {
+            StringBuilder sql = new StringBuilder("SELECT " + destino.tramoSql);
+            for (String columna : destino.columnasLob.keySet()) sql.append(", \"").append(columna).append('"');
+            List<Integer> posiciones = new ArrayList<>(destino.columnasLob.values());
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql + " FROM " + schema + "." + esperada.nombre)) {
+                ResultSetMetaData meta = rs.getMetaData();
+                while (rs.next()) {
+                    int tramo = rs.getInt(1);
+                    for (int i = 2; i <= meta.getColumnCount(); i++) {
+                        byte[] contenido = contenidoLob(rs, i, meta.getColumnType(i), encoding);
+                        if (contenido != null) destino.anadirLob(tramo, posiciones.get(i - 2), contenido);
+                    }
+                }
+            }
+        }
+
+        List<String> mensajes = new ArrayList<>();
+        Set<Integer> tramos = new TreeSet<>(esperada.sumas.keySet());
+        tramos.addAll(destino.sumas.keySet());
+        for (Integer tramo : tramos) {
+            long[] origen = esperada.sumas.containsKey(tramo) ? esperada.sumas.get(tramo) : new long[3];
+            long[] actual = destino.sumas.containsKey(tramo) ? destino.sumas.get(tramo) : new long[3];
+            StringBuilder mensaje = new StringBuilder();
+            if (origen[0] != actual[0]) mensaje.append(", filas ").append(origen[0]).append(" en la exportación y ").append(actual[0]).append(" en destino");
+            else if (origen[1] != actual[1]) mensaje.append(", mismas filas con distinto contenido");
+            if (lobs && origen[2] != actual[2]) mensaje.append(", LOB distintos");
+            if (mensaje.length() > 0) mensajes.add(esperada.nombre + " tramo " + tramo + mensaje);
+        }
+        return mensajes;
+    }
+
+    private static Map<String, Tabla> leerSumas(File fichero, String encoding) throws IOException {
+        Map<String, Tabla> tablas = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fichero), encoding))) {
+            String linea;
+            while ((linea = reader.readLine()) != null) {
+                if (linea.isEmpty() || linea.startsWith("#")) continue;
+                String[] campos = linea.split("\t", -1);
+                if (campos[1].equals("*")) {
+                    List<String> clave = campos[6].isEmpty() ? new ArrayList<>() : Arrays.asList(campos[6].split(","));
+                    tablas.put(campos[0], new Tabla(campos[0], Integer.parseInt(campos[5]), clave));
+                } else {
+                    long[] suma = tablas.get(campos[0]).tramo(Integer.parseInt(campos[1]));
+                    suma[0] = Long.parseLong(campos[2]);
+                    suma[1] = Long.parseLong(campos[3]);
+                    suma[2] = Long.parseLong(campos[4]);
+                }
+            }
+        }
+        return tablas;
+    }
+}
@@ -17,17 +17,48 @@
  * - Permite ocultar el cursor de la consola durante la ejecución para una mejor experiencia visual.
  *
  * Configuración:
- * - Los parámetros de conexión y configuración se leen desde el archivo "OracleTableExporter.properties".
- * - Permite indicar el esquema a exportar y la codificación de archivos.
+ * - Los parámetros de conexión y configuración se leen desde el archivo "OracleTableExporter.properties"
+ *   con el formato común de OracleConnectionPool (../Comun), que también abre la sesión con la caché de
+ *   sentencias, el prefetch, el SDU y los formatos NLS configurados ("pool.*").
+ * - Permite indicar el esquema a exportar, la codificación de archivos y la carpeta de exportación
+ *   ("export.dir", por defecto una carpeta con el nombre del esquema).
  *
  * Notas:
  * - Para la importación de datos, se requiere un proceso adicional que lea los archivos externos de CLOB/BLOB
  *   y reconstruya los campos correspondientes.
  * - El formato de los archivos externos es: "[BLOB|CLOB]_NOMBRE-TABLA_NOMBRE-CAMPO_ID-REGISTRO.base64"
+ *   ID-REGISTRO es el número de fila sin ceros a la izquierda, sin límite de cifras.
+ * - Junto a los ficheros se genera un manifiesto (MANIFEST.tsv) con una línea por fichero exportado:
+ *   TIPO, OBJETO, FICHERO, FILAS, BYTES, LOBS y BYTES_LOB separados por tabuladores. El importador
+ *   construye su plan a partir de este manifiesto sin recorrer la carpeta de exportación.
+ * - Al terminar se escribe un informe de métricas (OracleRunMetrics, en ../Comun) con el tiempo de cada
+ *   tabla repartido en FETCH (lectura del cursor y de los LOB), ENCODE (formato del INSERT y Base64) y
+ *   WRITE (escritura de ficheros), filas y bytes por segundo, y la lista de las tablas más lentas.
+ *   Ficheros y tamaño de la lista: "export.metricas.informe", "export.metricas.lentas" y "metricas.top".
+ * - Con "export.checksums=SI" (por defecto) se escriben también las sumas de control por tabla y por
+ *   tramo de CHECKSUMS.txt (OracleTableChecksums). El servidor calcula el tramo y el hash de cada fila en
+ *   la misma consulta de la exportación; el exportador solo añade el SHA-256 de los LOB que ya lee.
+ *   Número de tramos por tabla: "export.checksums.tramos".
+ * - Exportación apoyada en el servidor, para servidores con muchos núcleos y clientes pequeños:
+ *   - "export.paralelo.grado" pide un recorrido en paralelo (hint PARALLEL) con ese grado para todas las
+ *     tablas; "export.paralelo.clases" lo ajusta por tamaño (filas:grado, p. ej. 1000000:4,10000000:8) y
+ *     "export.paralelo.grado.TABLA" para una tabla concreta. 0 o 1 = recorrido en serie.
+ *   - Con "export.render.servidor=SI" el servidor devuelve ya formateadas, como texto del INSERT, las
+ *     columnas que no son LOB, agrupadas en tramos de columnas consecutivas de menos de
+ *     "export.render.bytes" bytes (4000, el máximo de VARCHAR2 en SQL). Se usan formatos explícitos que no
+ *     dependen de la sesión de exportación; la importación los lee con los pool.nls.fecha, pool.nls.timestamp
+ *     y pool.nls.numeros de este mismo fichero, que deben mantener sus valores. Las columnas que podrían no
+ *     caber en un tramo, los LOB, los TIMESTAMP WITH [LOCAL] TIME ZONE (el pool no fija un formato NLS con
+ *     zona horaria) y los tipos sin formato se siguen tratando en el cliente.
+ *   - En el cliente los NUMBER se escriben sin notación exponencial y los RAW en hexadecimal, igual que en
+ *     el servidor, de modo que el formato de una columna no depende de por dónde se haya exportado.
  */
 import java.io.*;
 import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 public class OracleTableExporter {
 
@@ -54,29 +85,69 @@ public class OracleTableExporter {
 
     private static int fileNumber = 0;
 
+    // Manifiesto de la exportación (una línea por fichero generado)
+    private static final String MANIFEST_FILE = "MANIFEST.tsv";
+    private static BufferedWriter manifestWriter;
+
+    // Diario de reanudación que OracleTableImporter deja en la carpeta de exportación
+    private static final String IMPORT_CHECKPOINT_FILE = "IMPORT.checkpoint";
+
+    // Sumas de control por tabla y tramo (null si están desactivadas)
+    private static BufferedWriter checksumWriter;
+    private static int checksumChunks;
+
+    // Recorrido en paralelo y formato en el servidor
+    private static int parallelDegree;
+    private static final TreeMap<Long, Integer> parallelClasses = new TreeMap<>();
+    private static final Map<String, Integer> parallelTables = new HashMap<>();
+    private static boolean serverRendering;
+    private static int renderBytes;
+
+    // Métricas de la exportación en curso
+    private static OracleRunMetrics metrics;
 
     private static final String CONFIG_FILE = "OracleTableExporter.properties";
 
     public static void main(String[] args) {
         Properties config = loadConfig();
         if (config == null) return;
+        runExport(config);
+    }
 
-        String url = config.getProperty("jdbc.url");
+    // Exportación completa con la configuración indicada
+    static void runExport(Properties config) {
         String user = config.getProperty("jdbc.user");
-        String password = config.getProperty("jdbc.password");
         String schema = config.getProperty("jdbc.schema", user); // Si no hay schema, usa el usuario
         String encoding = config.getProperty("encoding", "UTF-8");
+        fileNumber = 0;
+        checksumChunks = Math.max(1, Integer.parseInt(config.getProperty("export.checksums.tramos", "64")));
+        boolean checksums = "SI".equalsIgnoreCase(config.getProperty("export.checksums", "SI"));
+        loadServerOptions(config);
+        metrics = new OracleRunMetrics("OracleTableExporter", Integer.parseInt(config.getProperty("metricas.top", "20")));
 
         // Crear carpeta de usuario si no existe
-        File userDir = new File(schema);
+        File userDir = new File(config.getProperty("export.dir", schema));
         if (!userDir.exists()) {
-            if (!userDir.mkdir()) {
-                System.err.println(RED + "No se pudo crear la carpeta: " + schema + RESET);
+            if (!userDir.mkdirs()) {
+                System.err.println(RED + "No se pudo crear la carpeta: " + userDir + RESET);
                 return;
             }
         }
+        // El diario de OracleTableImporter de una exportación anterior no vale para esta
+        File checkpoint = new File(userDir, IMPORT_CHECKPOINT_FILE);
+        if (checkpoint.exists() && !checkpoint.delete()) {
+            System.err.println(RED + "No se pudo borrar " + checkpoint + RESET);
+        }
 
-        try (Connection conn = DriverManager.getConnection(url, user, password)) {
+        try (OracleConnectionPool pool = new OracleConnectionPool(config, 1, 1);
+             Connection conn = pool.getConnection();
+             BufferedWriter manifest = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(userDir, MANIFEST_FILE)), encoding));
+             BufferedWriter checksum = checksums ? new BufferedWriter(new OutputStreamWriter(
+                     new FileOutputStream(new File(userDir, OracleTableChecksums.CHECKSUMS_FILE)), encoding)) : null) {
+            manifestWriter = manifest;
+            manifestWriter.write("#TIPO\tOBJETO\tFICHERO\tFILAS\tBYTES\tLOBS\tBYTES_LOB\n");
+            checksumWriter = checksum;
+            if (checksumWriter != null) checksumWriter.write("#TABLA\tTRAMO\tFILAS\tSUMA\tSUMA_LOB\tTRAMOS\tCLAVE\n");
             hideCursor();
             DatabaseMetaData meta = conn.getMetaData();
             ResultSet tables = meta.getTables(null, schema.toUpperCase(), "%", new String[]{"TABLE"});
@@ -120,16 +191,21 @@ public class OracleTableExporter {
             System.out.println(CYAN + "Exportando FUNCIONES..." + RESET);
             exportFunctions(conn, schema, userDir, encoding);
 
-        } catch (SQLException e) {
+        } catch (SQLException | IOException e) {
             System.err.println(RED + "Error general: " + e.getMessage() + RESET);
         } finally {
+            manifestWriter = null;
+            checksumWriter = null;
             showCursor();
+            metrics.writeReport(new File(config.getProperty("export.metricas.informe", "OracleTableExporter.metricas.json")),
+                    new File(config.getProperty("export.metricas.lentas", "OracleTableExporter.lentas.txt")));
         }
     }
 
     private static void exportTableDDL(Connection conn, String schema, String tableName, File userDir, String encoding)
             throws SQLException, IOException {
         String ddlFileName = userDir + File.separator + getFileIndex() + tableName + "_DDL.sql";
+        long start = System.nanoTime();
         try (Statement stmt = conn.createStatement();
                 ResultSet rs = stmt.executeQuery(
                     "SELECT DBMS_METADATA.GET_DDL('TABLE', '" + tableName + "', '" + schema + "') FROM DUAL")) {
@@ -138,34 +214,61 @@ public class OracleTableExporter {
                 try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(ddlFileName), encoding))) {
                     writer.write(ddl);
                 }
+                addManifestEntry("TABLE_DDL", tableName, ddlFileName, 0, 0, 0);
             }
         }
+        metrics.record("TABLE_DDL", System.nanoTime() - start, tableName);
     }
 
 
     private static void exportTableDataBASE64File(Connection conn, String schema, String tableName, File userDir, String encoding) {
         String fileName = userDir + File.separator + getFileIndex() + tableName + "_inserts.sql";
         int updateExportIndicator = 0;
+        long start = System.nanoTime();
+        // Tiempo de cada fase acumulado en local; se vuelca a las métricas al terminar la tabla
+        long fetchNanos = 0;
+        long encodeNanos = 0;
+        long writeNanos = 0;
         try {
             // Contar total de filas
             int totalRows;
             try (Statement stmtCount = conn.createStatement();
-                 ResultSet rsCount = stmtCount.executeQuery("SELECT COUNT(*) FROM " + schema + "." + tableName)) {
+                 ResultSet rsCount = stmtCount.executeQuery("SELECT " + parallelHint(tableName, -1) + "COUNT(*) FROM "
+                         + schema + "." + tableName + " t")) {
                 rsCount.next();
                 totalRows = rsCount.getInt(1);
             }
 
             System.out.print(YELLOW + "Progreso: [");
             int exported = 0;
+            long lobFiles = 0;
+            long lobBytes = 0;
+            OracleTableChecksums.Tabla checksum = prepareChecksum(conn, schema, tableName);
+            RenderedColumns renderedColumns = serverRendering ? renderedColumns(conn, schema, tableName) : null;
 
             try (Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery("SELECT * FROM " + schema + "." + tableName);
+                 ResultSet rs = openTableData(stmt, schema, tableName, parallelHint(tableName, totalRows), renderedColumns, checksum);
                  BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), encoding))) {
 
                 ResultSetMetaData meta = rs.getMetaData();
-                int columnCount = meta.getColumnCount();
+                // Con sumas de control, las dos últimas columnas son el tramo y el hash de la fila
+                if (!"CHK_FILA".equalsIgnoreCase(meta.getColumnLabel(meta.getColumnCount()))) checksum = null;
+                int columnCount = meta.getColumnCount() - (checksum != null ? 2 : 0);
+                // Columnas ya formateadas por el servidor y posición en la tabla de cada columna de la consulta
+                boolean[] rendered = new boolean[columnCount + 1];
+                int[] position = new int[columnCount + 1];
+                for (int i = 1; i <= columnCount; i++) {
+                    rendered[i] = meta.getColumnLabel(i).toUpperCase().startsWith("CHK_SEG");
+                    Integer tablePosition = renderedColumns != null ? renderedColumns.positions.get(meta.getColumnName(i)) : null;
+                    position[i] = tablePosition != null ? tablePosition : i;
+                }
 
+                long lap = System.nanoTime();
                 while (rs.next()) {
+                    long now = System.nanoTime();
+                    fetchNanos += now - lap;
+                    lap = now;
+                    int chunk = checksum != null ? rs.getInt(columnCount + 1) : 0;
                     StringBuilder insert = new StringBuilder("INSERT INTO " + schema + "." + tableName + " VALUES (");
                     for (int i = 1; i <= columnCount; i++) {
                         int columnType = meta.getColumnType(i);
@@ -176,26 +279,71 @@ public class OracleTableExporter {
                             if (columnType == java.sql.Types.CLOB) {
                                 Clob clob = rs.getClob(i);
                                 String clobString = clobToString(clob);
-                                String base64 = java.util.Base64.getEncoder().encodeToString(clobString.getBytes(encoding));
-                                String clobFileName = String.format("CLOB_%s_%s_%05d.base64", tableName, columnName, exported + 1);
+                                now = System.nanoTime();
+                                fetchNanos += now - lap;
+                                lap = now;
+                                byte[] clobBytes = clobString.getBytes(encoding);
+                                if (checksum != null) checksum.anadirLob(chunk, position[i], clobBytes);
+                                String base64 = java.util.Base64.getEncoder().encodeToString(clobBytes);
+                                String clobFileName = String.format("CLOB_%s_%s_%d.base64", tableName, columnName, exported + 1);
+                                now = System.nanoTime();
+                                encodeNanos += now - lap;
+                                lap = now;
                                 writeStringToFile(userDir, clobFileName, base64, encoding);
+                                writeManifestLine("LOB", tableName, clobFileName, 0, base64.length(), 0, 0);
+                                now = System.nanoTime();
+                                writeNanos += now - lap;
+                                lap = now;
+                                metrics.addLob(tableName, base64.length());
+                                lobFiles++;
+                                lobBytes += base64.length();
                                 insert.append("'FILE:").append(clobFileName).append("'");
                             } else if (columnType == java.sql.Types.BLOB) {
                                 Blob blob = rs.getBlob(i);
-                                String base64 = java.util.Base64.getEncoder().encodeToString(blobToBytes(blob));
-                                String blobFileName = String.format("BLOB_%s_%s_%05d.base64", tableName, columnName, exported + 1);
+                                byte[] blobBytes = blobToBytes(blob);
+                                now = System.nanoTime();
+                                fetchNanos += now - lap;
+                                lap = now;
+                                if (checksum != null) checksum.anadirLob(chunk, position[i], blobBytes);
+                                String base64 = java.util.Base64.getEncoder().encodeToString(blobBytes);
+                                String blobFileName = String.format("BLOB_%s_%s_%d.base64", tableName, columnName, exported + 1);
+                                now = System.nanoTime();
+                                encodeNanos += now - lap;
+                                lap = now;
                                 writeStringToFile(userDir, blobFileName, base64, encoding);
+                                writeManifestLine("LOB", tableName, blobFileName, 0, base64.length(), 0, 0);
+                                now = System.nanoTime();
+                                writeNanos += now - lap;
+                                lap = now;
+                                metrics.addLob(tableName, base64.length());
+                                lobFiles++;
+                                lobBytes += base64.length();
                                 insert.append("'FILE:").append(blobFileName).append("'");
+                            } else if (rendered[i]) {
+                                // Tramo de columnas formateado por el servidor: se copia tal cual
+                                now = System.nanoTime();
+                                fetchNanos += now - lap;
+                                lap = now;
+                                insert.append((String) value);
                             } else {
-                                String strValue = value.toString().replace("'", "''");
-                                insert.append("'").append(strValue).append("'");
+                                now = System.nanoTime();
+                                fetchNanos += now - lap;
+                                lap = now;
+                                insert.append(sqlLiteral(value));
                             }
                         } else {
+                            now = System.nanoTime();
+                            fetchNanos += now - lap;
+                            lap = now;
                             insert.append("NULL");
                         }
                         if (i < columnCount) insert.append(", ");
                     }
                     insert.append(");\n");
+                    if (checksum != null) checksum.anadirFila(chunk, rs.getLong(columnCount + 2));
+                    now = System.nanoTime();
+                    encodeNanos += now - lap;
+                    lap = now;
                     writer.write(insert.toString());
                     exported++;
 
@@ -205,12 +353,195 @@ public class OracleTableExporter {
                     }
                     updateExportIndicator++;
                     updateExportIndicator%=100;
+                    now = System.nanoTime();
+                    writeNanos += now - lap;
+                    lap = now;
                 }
                 // Ponemos la barra al 100%
                 updateExportIndicator(100, 100);
             }
+            addManifestEntry("INSERTS", tableName, fileName, exported, lobFiles, lobBytes);
+            if (checksum != null && checksumWriter != null) checksum.escribir(checksumWriter);
+            metrics.addRows(tableName, exported);
+            metrics.addBytes(tableName, new File(fileName).length());
         } catch (SQLException | IOException e) {
+            metrics.addError(tableName);
             System.err.println(RED + "\nError procesando tabla " + tableName + ": " + e.getMessage() + RESET);
+        } finally {
+            metrics.addPhase(tableName, OracleRunMetrics.FETCH, fetchNanos);
+            metrics.addPhase(tableName, OracleRunMetrics.ENCODE, encodeNanos);
+            metrics.addPhase(tableName, OracleRunMetrics.WRITE, writeNanos);
+            metrics.record(tableName, System.nanoTime() - start, "INSERTS " + tableName);
+        }
+    }
+
+    // Expresiones de tramo y hash de fila de la tabla, o null si las sumas de control están desactivadas o no se pueden calcular
+    private static OracleTableChecksums.Tabla prepareChecksum(Connection conn, String schema, String tableName) {
+        if (checksumWriter == null) return null;
+        try {
+            return OracleTableChecksums.preparar(conn, schema, tableName, null, checksumChunks);
+        } catch (SQLException e) {
+            System.err.println(RED + "\nSin sumas de control para " + tableName + ": " + e.getMessage() + RESET);
+            return null;
+        }
+    }
+
+    // Consulta de los datos de la tabla, con el hint de paralelismo. Con formato en el servidor se piden los
+    // tramos ya formateados y con sumas de control se añaden el tramo y el hash de cada fila; si el servidor
+    // no admite alguna de las dos cosas se exporta sin ella
+    private static ResultSet openTableData(Statement stmt, String schema, String tableName, String hint, RenderedColumns renderedColumns,
+            OracleTableChecksums.Tabla checksum) throws SQLException {
+        String from = " FROM " + schema + "." + tableName + " t";
+        if (renderedColumns != null) {
+            try {
+                return stmt.executeQuery("SELECT " + hint + renderedColumns.select + (checksum != null ? ", " + checksum.columnasSql() : "") + from);
+            } catch (SQLException e) {
+                System.err.println(RED + "\nSin formato en el servidor para " + tableName + ": " + e.getMessage() + RESET);
+            }
+        }
+        if (checksum != null) {
+            try {
+                return stmt.executeQuery("SELECT " + hint + "t.*, " + checksum.columnasSql() + from);
+            } catch (SQLException e) {
+                System.err.println(RED + "\nSin sumas de control para " + tableName + ": " + e.getMessage() + RESET);
+            }
+        }
+        return stmt.executeQuery("SELECT " + hint + "t.*" + from);
+    }
+
+    private static void loadServerOptions(Properties config) {
+        parallelDegree = Integer.parseInt(config.getProperty("export.paralelo.grado", "0"));
+        parallelClasses.clear();
+        for (String sizeClass : config.getProperty("export.paralelo.clases", "").split(",")) {
+            String[] parts = sizeClass.trim().split(":");
+            if (parts.length == 2) parallelClasses.put(Long.parseLong(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+        parallelTables.clear();
+        for (String key : config.stringPropertyNames()) {
+            if (key.startsWith("export.paralelo.grado.")) {
+                parallelTables.put(key.substring("export.paralelo.grado.".length()).toUpperCase(), Integer.parseInt(config.getProperty(key)));
+            }
+        }
+        serverRendering = "SI".equalsIgnoreCase(config.getProperty("export.render.servidor", "NO"));
+        renderBytes = Integer.parseInt(config.getProperty("export.render.bytes", "4000"));
+    }
+
+    // Hint de recorrido en paralelo de la tabla (alias t): el grado indicado para ella, el de la mayor
+    // clase de tamaño que alcanzan sus filas (-1 = aún no se conocen) o el general
+    private static String parallelHint(String tableName, long rows) {
+        Integer degree = parallelTables.get(tableName.toUpperCase());
+        if (degree == null) {
+            Map.Entry<Long, Integer> sizeClass = rows < 0 ? null : parallelClasses.floorEntry(rows);
+            degree = sizeClass != null ? sizeClass.getValue() : parallelDegree;
+        }
+        return degree > 1 ? "/*+ PARALLEL(t, " + degree + ") */ " : "";
+    }
+
+    // Columnas de la consulta cuando el servidor formatea las columnas que no son LOB, y posición en la
+    // tabla de las que se siguen leyendo en el cliente
+    private static class RenderedColumns {
+        final StringBuilder select = new StringBuilder();
+        final Map<String, Integer> positions = new HashMap<>();
+        private StringBuilder segment;
+        private long segmentBytes;
+        private int segments;
+
+        void addRendered(String literal, long bytes) {
+            if (segment != null && segmentBytes + 2 + bytes > renderBytes) closeSegment();
+            if (segment == null) {
+                segment = new StringBuilder(literal);
+                segmentBytes = bytes;
+            } else {
+                segment.append(" || ', ' || ").append(literal);
+                segmentBytes += 2 + bytes;
+            }
+        }
+
+        void addColumn(String columnName, int position) {
+            closeSegment();
+            append("t.\"" + columnName + "\"");
+            positions.put(columnName, position);
+        }
+
+        void closeSegment() {
+            if (segment == null) return;
+            append(segment + " AS CHK_SEG" + (++segments));
+            segment = null;
+        }
+
+        private void append(String column) {
+            if (select.length() > 0) select.append(", ");
+            select.append(column);
+        }
+    }
+
+    // Tipos con zona horaria: su literal necesitaría NLS_TIMESTAMP_TZ_FORMAT en la importación
+    private static boolean hasTimeZone(int columnType) {
+        return columnType == Types.TIMESTAMP_WITH_TIMEZONE || columnType == -101 || columnType == -102;
+    }
+
+    private static RenderedColumns renderedColumns(Connection conn, String schema, String tableName) {
+        RenderedColumns columns = new RenderedColumns();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM " + schema + "." + tableName + " WHERE 1 = 0")) {
+            ResultSetMetaData meta = rs.getMetaData();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                int columnType = meta.getColumnType(i);
+                String text = OracleTableChecksums.columnaComoTexto(meta.getColumnName(i), columnType, meta.getColumnTypeName(i));
+                long bytes = renderedBytes(columnType, meta.getPrecision(i));
+                if (text == null || OracleTableChecksums.esLob(columnType) || hasTimeZone(columnType) || bytes > renderBytes) {
+                    columns.addColumn(meta.getColumnName(i), i);
+                } else {
+                    columns.addRendered("CASE WHEN " + text + " IS NULL THEN 'NULL' ELSE '''' || REPLACE(" + text
+                            + ", '''', '''''') || '''' END", bytes);
+                }
+            }
+            columns.closeSegment();
+        } catch (SQLException e) {
+            System.err.println(RED + "\nSin formato en el servidor para " + tableName + ": " + e.getMessage() + RESET);
+            return null;
+        }
+        return columns;
+    }
+
+    // Literal de un valor que no es LOB para los INSERT: texto entre comillas, con los números sin notación
+    // exponencial y los RAW en hexadecimal, como los que formatea el servidor
+    static String sqlLiteral(Object value) {
+        if (value == null) return "NULL";
+        String text;
+        if (value instanceof java.math.BigDecimal) {
+            text = ((java.math.BigDecimal) value).toPlainString();
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            char[] hex = new char[bytes.length * 2];
+            for (int i = 0; i < bytes.length; i++) {
+                hex[2 * i] = Character.toUpperCase(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+                hex[2 * i + 1] = Character.toUpperCase(Character.forDigit(bytes[i] & 0xF, 16));
+            }
+            text = new String(hex);
+        } else {
+            text = value.toString();
+        }
+        return "'" + text.replace("'", "''") + "'";
+    }
+
+    // Bytes máximos del literal de una columna, entre comillas. En texto el peor caso es UTF-8 de 4 bytes
+    // por carácter o todas las comillas duplicadas
+    private static long renderedBytes(int columnType, int precision) {
+        switch (columnType) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+                return precision > 0 ? 4L * precision + 2 : Long.MAX_VALUE;
+            case Types.BINARY:
+            case Types.VARBINARY:
+                return precision > 0 ? 2L * precision + 2 : Long.MAX_VALUE;
+            case Types.DATE:
+            case Types.TIMESTAMP:
+                return 40;
+            default:
+                return 66; // números: hasta 64 caracteres con 'TM9'
         }
     }
 
@@ -450,11 +781,14 @@ public class OracleTableExporter {
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
                     String seqName = rs.getString(1);
+                    long start = System.nanoTime();
                     String ddl = getDDL(conn, "SEQUENCE", seqName, schema);
                     if (ddl != null) {
                         String fileName = userDir + File.separator + getFileIndex() + seqName + "_SEQ_DDL.sql";
                         writeToFile(fileName, ddl, encoding);
+                        addManifestEntry("SEQUENCE_DDL", seqName, fileName, 0, 0, 0);
                     }
+                    metrics.record("SEQUENCE_DDL", System.nanoTime() - start, seqName);
                 }
             }
         } catch (SQLException | IOException e) {
@@ -469,11 +803,14 @@ public class OracleTableExporter {
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
                     String trgName = rs.getString(1);
+                    long start = System.nanoTime();
                     String ddl = getDDL(conn, "TRIGGER", trgName, schema);
                     if (ddl != null) {
                         String fileName = userDir + File.separator + getFileIndex() + trgName + "_TRG_DDL.sql";
                         writeToFile(fileName, ddl, encoding);
+                        addManifestEntry("TRIGGER_DDL", trgName, fileName, 0, 0, 0);
                     }
+                    metrics.record("TRIGGER_DDL", System.nanoTime() - start, trgName);
                 }
             }
         } catch (SQLException | IOException e) {
@@ -488,11 +825,14 @@ public class OracleTableExporter {
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
                     String funcName = rs.getString(1);
+                    long start = System.nanoTime();
                     String ddl = getDDL(conn, "FUNCTION", funcName, schema);
                     if (ddl != null) {
                         String fileName = userDir + File.separator + getFileIndex() + funcName + "_FUNC_DDL.sql";
                         writeToFile(fileName, ddl, encoding);
+                        addManifestEntry("FUNCTION_DDL", funcName, fileName, 0, 0, 0);
                     }
+                    metrics.record("FUNCTION_DDL", System.nanoTime() - start, funcName);
                 }
             }
         } catch (SQLException | IOException e) {
@@ -500,7 +840,7 @@ public class OracleTableExporter {
         }
     }
 
-    private static String getDDL(Connection conn, String objectType, String objectName, String schema) {
+    static String getDDL(Connection conn, String objectType, String objectName, String schema) {
         try (PreparedStatement ps = conn.prepareStatement(
                 "SELECT DBMS_METADATA.GET_DDL(?, ?, ?) FROM DUAL")) {
             ps.setString(1, objectType);
@@ -523,6 +863,20 @@ public class OracleTableExporter {
         }
     }
 
+    // Añade al manifiesto la entrada de un fichero ya escrito y cerrado
+    private static void addManifestEntry(String type, String objectName, String fileName, long rows, long lobFiles, long lobBytes)
+            throws IOException {
+        File file = new File(fileName);
+        writeManifestLine(type, objectName, file.getName(), rows, file.length(), lobFiles, lobBytes);
+    }
+
+    private static void writeManifestLine(String type, String objectName, String fileName, long rows, long bytes, long lobFiles, long lobBytes)
+            throws IOException {
+        if (manifestWriter == null) return;
+        manifestWriter.write(type + "\t" + objectName + "\t" + fileName + "\t" + rows + "\t" + bytes
+                + "\t" + lobFiles + "\t" + lobBytes + "\n");
+    }
+
      private static String getFileIndex() {
         return String.format("%07d", fileNumber++) + "_";
     }
@@ -548,10 +902,8 @@ public class OracleTableExporter {
     }
 
     private static Properties loadConfig() {
-        Properties config = new Properties();
-        try (InputStream input = new FileInputStream(CONFIG_FILE)) {
-            config.load(input);
-            return config;
+        try {
+            return OracleConnectionPool.loadConfig(CONFIG_FILE);
         } catch (IOException e) {
             System.err.println(RED + "No se pudo cargar el archivo de configuración " + CONFIG_FILE + RESET);
             return null;
@@ -7,70 +7,216 @@
  * 3. Inserts (con soporte para BLOB/CLOB en ficheros externos)
  * 4. Funciones
  * 5. Triggers
+ *
+ * El plan de importación se construye leyendo una sola vez el manifiesto (MANIFEST.tsv) que genera
+ * OracleTableExporter, sin recorrer la carpeta de exportación. Cada fichero del manifiesto se
+ * procesa exactamente una vez, en la fase que corresponde a su tipo.
+ *
+ * Los ficheros de inserts se leen mapeados en memoria. Los que superan "import.paralelo.umbral.mb"
+ * se dividen en tramos alineados a fin de línea que cargan en paralelo "import.hilos" sesiones
+ * independientes, cada una con su propia conexión. Las sesiones salen de un OracleConnectionPool
+ * (../Comun) de "import.hilos" + 1 conexiones que se abren y preparan al arrancar.
+ *
+ * La carga es reanudable: cada sesión confirma cada "import.commit.filas" líneas y anota en el diario
+ * IMPORT.checkpoint el rango de bytes confirmado de cada fichero (o el número de líneas, en la lectura
+ * secuencial) y los scripts DDL ya ejecutados. Al volver a lanzar el importador solo se procesa lo que
+ * falta. Las filas que fallan se escriben en "NNNNNNN_TABLA_rechazados.sql" con el error como comentario
+ * y la carga del fichero continúa. Los rechazos de un lote se escriben al confirmarlo, de modo que un lote
+ * deshecho y repetido al reanudar no los duplica. Al reanudar un diario válido se añaden al fichero de
+ * rechazos; si no, el fichero se vacía. Para empezar desde cero basta con borrar IMPORT.checkpoint.
+ * La primera línea del diario identifica la exportación (manifiesto y tamaño y fecha de cada fichero) y
+ * el destino (URL, usuario y esquema); si no coincide con la importación en curso, el diario se descarta
+ * y se empieza desde cero. OracleTableExporter borra el diario al exportar de nuevo en la misma carpeta.
+ *
+ * Al terminar se escribe un informe de métricas (OracleRunMetrics, en ../Comun) con la latencia de cada
+ * fila y de cada script por tabla, el tiempo de lectura y análisis de líneas (PARSE) y de ejecución
+ * (EXECUTE), filas, bytes y LOB por segundo, y las filas y tablas más lentas. Ficheros y tamaño de la
+ * lista: "import.metricas.informe", "import.metricas.lentas" y "metricas.top".
+ *
+ * Con "import.verificar=SI" se comparan al final las sumas de control de CHECKSUMS.txt con las del
+ * destino (OracleTableChecksums) y se informa de los tramos que no coinciden.
  */
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.*;
 
 public class OracleTableImporter {
     private static final String CONFIG_FILE = "OracleTableExporter.properties";
-    private static final Pattern FILE_REF_PATTERN = Pattern.compile("'FILE:(BLOB|CLOB)_(.+?)_(.+?)_(\\d{5})\\.base64'");
+    private static final String MANIFEST_FILE = "MANIFEST.tsv";
+    private static final String CHECKPOINT_FILE = "IMPORT.checkpoint";
+    private static final Pattern FILE_REF_PATTERN = Pattern.compile("'FILE:(BLOB|CLOB)_(.+?)_(.+?)_(\\d+)\\.base64'");
+
+    // Tamaño de la ventana mapeada en memoria al recorrer un fichero de inserts
+    private static final int VENTANA_MAPEO = 64 * 1024 * 1024;
+
+    // Conexiones y paralelismo para las sesiones de carga
+    private static OracleConnectionPool pool;
+    private static int hilosImportacion;
+    private static long umbralParalelo;
+    private static int filasPorCommit;
+    private static DiarioPuntosControl diario;
+    private static OracleRunMetrics metricas;
 
     public static void main(String[] args) {
         Properties config = loadConfig();
         if (config == null) return;
+        importar(config);
+    }
 
-        String url = config.getProperty("jdbc.url");
+    // Importación completa con la configuración indicada, desde la carpeta "export.dir" (por defecto, el esquema)
+    static void importar(Properties config) {
         String user = config.getProperty("jdbc.user");
-        String password = config.getProperty("jdbc.password");
         String schema = config.getProperty("jdbc.schema", user);
         String encoding = config.getProperty("encoding", "UTF-8");
 
-        File userDir = new File(schema);
+        hilosImportacion = Integer.parseInt(config.getProperty("import.hilos", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        umbralParalelo = Long.parseLong(config.getProperty("import.paralelo.umbral.mb", "256")) * 1024 * 1024;
+        filasPorCommit = Math.max(1, Integer.parseInt(config.getProperty("import.commit.filas", "1000")));
+        metricas = new OracleRunMetrics("OracleTableImporter", Integer.parseInt(config.getProperty("metricas.top", "20")));
+
+        File userDir = new File(config.getProperty("export.dir", schema));
         if (!userDir.exists() || !userDir.isDirectory()) {
-            System.err.println("No existe la carpeta de datos: " + schema);
+            System.err.println("No existe la carpeta de datos: " + userDir);
             return;
         }
 
-        try (Connection conn = DriverManager.getConnection(url, user, password)) {
+        Map<String, List<EntradaManifiesto>> plan = leerManifiesto(userDir, encoding);
+        if (plan == null) return;
+
+        try (DiarioPuntosControl diarioImportacion = new DiarioPuntosControl(new File(userDir, CHECKPOINT_FILE),
+                     cabeceraDiario(userDir, plan, config, schema), encoding);
+             OracleConnectionPool poolImportacion = new OracleConnectionPool(config, hilosImportacion + 1, hilosImportacion + 1);
+             Connection conn = poolImportacion.getConnection()) {
+            diario = diarioImportacion;
+            pool = poolImportacion;
+            if (diario.tieneEntradas()) {
+                System.out.println("Reanudando la importación desde " + CHECKPOINT_FILE);
+            }
+
             // 1. Importar DDL de tablas
             System.out.println("Importando DDL de tablas...");
-            importarArchivosPorPatron(conn, userDir, "_DDL.sql", encoding);
+            importarScripts(conn, userDir, plan.get("TABLE_DDL"), encoding);
 
             // 2. Importar secuencias
             System.out.println("Importando secuencias...");
-            importarArchivosPorPatron(conn, userDir, "_SEQ_DDL.sql", encoding);
+            importarScripts(conn, userDir, plan.get("SEQUENCE_DDL"), encoding);
 
             // 3. Importar datos (inserts)
             System.out.println("Importando datos (inserts)...");
-            importarInserts(conn, userDir, encoding);
+            importarInserts(conn, userDir, plan.get("INSERTS"), encoding);
 
             // 4. Importar funciones
             System.out.println("Importando funciones...");
-            importarArchivosPorPatron(conn, userDir, "_FUNC_DDL.sql", encoding);
+            importarScripts(conn, userDir, plan.get("FUNCTION_DDL"), encoding);
 
             // 5. Importar triggers
             System.out.println("Importando triggers...");
-            importarArchivosPorPatron(conn, userDir, "_TRG_DDL.sql", encoding);
+            importarScripts(conn, userDir, plan.get("TRIGGER_DDL"), encoding);
 
             System.out.println("Importación finalizada.");
-        } catch (SQLException e) {
+        } catch (SQLException | IOException e) {
             System.err.println("Error de conexión o importación: " + e.getMessage());
+        } finally {
+            diario = null;
+            pool = null;
+            metricas.writeReport(new File(config.getProperty("import.metricas.informe", "OracleTableImporter.metricas.json")),
+                    new File(config.getProperty("import.metricas.lentas", "OracleTableImporter.lentas.txt")));
+        }
+
+        if ("SI".equalsIgnoreCase(config.getProperty("import.verificar", "NO"))) {
+            OracleTableChecksums.verificar(config);
+        }
+    }
+
+    // Entrada del manifiesto generado por OracleTableExporter
+    private static class EntradaManifiesto {
+        String tipo;
+        String objeto;
+        String fichero;
+        long filas;
+        long bytes;
+        long lobs;
+        long bytesLob;
+    }
+
+    // Lee el manifiesto una sola vez y agrupa sus entradas por tipo, en el orden de exportación.
+    // Las entradas LOB solo se contabilizan: sus ficheros se leen desde el insert que los referencia.
+    private static Map<String, List<EntradaManifiesto>> leerManifiesto(File userDir, String encoding) {
+        File manifestFile = new File(userDir, MANIFEST_FILE);
+        Map<String, List<EntradaManifiesto>> plan = new HashMap<>();
+        for (String tipo : new String[]{"TABLE_DDL", "SEQUENCE_DDL", "INSERTS", "FUNCTION_DDL", "TRIGGER_DDL"}) {
+            plan.put(tipo, new ArrayList<>());
+        }
+        long lobs = 0;
+        long bytesLob = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), encoding))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] campos = line.split("\t");
+                if (campos.length < 7) {
+                    System.err.println("Línea de manifiesto no reconocida: " + line);
+                    continue;
+                }
+                if (campos[0].equals("LOB")) {
+                    lobs++;
+                    bytesLob += Long.parseLong(campos[4]);
+                    continue;
+                }
+                List<EntradaManifiesto> entradas = plan.get(campos[0]);
+                if (entradas == null) {
+                    System.err.println("Tipo de objeto desconocido en el manifiesto: " + campos[0]);
+                    continue;
+                }
+                EntradaManifiesto entrada = new EntradaManifiesto();
+                entrada.tipo = campos[0];
+                entrada.objeto = campos[1];
+                entrada.fichero = campos[2];
+                entrada.filas = Long.parseLong(campos[3]);
+                entrada.bytes = Long.parseLong(campos[4]);
+                entrada.lobs = Long.parseLong(campos[5]);
+                entrada.bytesLob = Long.parseLong(campos[6]);
+                entradas.add(entrada);
+            }
+        } catch (FileNotFoundException e) {
+            System.err.println("No existe el manifiesto " + manifestFile.getPath() + ". Vuelva a exportar con OracleTableExporter.");
+            return null;
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error leyendo el manifiesto " + manifestFile.getPath() + ": " + e.getMessage());
+            return null;
         }
+        System.out.println("Plan: " + plan.get("TABLE_DDL").size() + " tablas, " + plan.get("SEQUENCE_DDL").size() + " secuencias, "
+                + plan.get("INSERTS").size() + " ficheros de datos, " + plan.get("FUNCTION_DDL").size() + " funciones, "
+                + plan.get("TRIGGER_DDL").size() + " triggers, " + lobs + " ficheros LOB (" + bytesLob + " bytes)");
+        return plan;
     }
 
-    private static void importarArchivosPorPatron(Connection conn, File userDir, String sufijo, String encoding) {
-        File[] files = userDir.listFiles((dir, name) -> name.endsWith(sufijo));
-        if (files == null) return;
-        Arrays.sort(files);
-        for (File file : files) {
-            importarScript(conn, file, encoding);
+    private static void importarScripts(Connection conn, File userDir, List<EntradaManifiesto> entradas, String encoding) {
+        for (EntradaManifiesto entrada : entradas) {
+            if (diario.scriptCompletado(entrada.fichero)) continue;
+            long inicio = System.nanoTime();
+            boolean correcto = importarScript(conn, new File(userDir, entrada.fichero), encoding);
+            long duracion = System.nanoTime() - inicio;
+            metricas.addPhase(entrada.tipo, OracleRunMetrics.EXECUTE, duracion);
+            metricas.record(entrada.tipo, duracion, entrada.objeto);
+            if (correcto) {
+                diario.registrarScript(entrada.fichero);
+            } else {
+                metricas.addError(entrada.tipo);
+            }
         }
     }
 
-    private static void importarScript(Connection conn, File scriptFile, String encoding) {
+    private static boolean importarScript(Connection conn, File scriptFile, String encoding) {
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(scriptFile), encoding))) {
             StringBuilder sb = new StringBuilder();
             String line;
@@ -81,42 +227,509 @@ public class OracleTableImporter {
             try (Statement stmt = conn.createStatement()) {
                 stmt.execute(sql);
                 System.out.println("Importado: " + scriptFile.getName());
+                return true;
             }
         } catch (IOException | SQLException e) {
             System.err.println("Error importando " + scriptFile.getName() + ": " + e.getMessage());
+            return false;
         }
     }
 
-    private static void importarInserts(Connection conn, File userDir, String encoding) {
-        File[] insertFiles = userDir.listFiles((dir, name) -> name.endsWith("_inserts.sql"));
-        if (insertFiles == null) return;
-        Arrays.sort(insertFiles);
-        for (File insertFile : insertFiles) {
-            System.out.println("Importando datos desde: " + insertFile.getName());
-            importTableInserts(conn, userDir, insertFile, encoding);
+    private static void importarInserts(Connection conn, File userDir, List<EntradaManifiesto> entradas, String encoding) {
+        for (EntradaManifiesto entrada : entradas) {
+            System.out.println("Importando datos desde: " + entrada.fichero + " (" + entrada.filas + " filas, " + entrada.lobs + " LOB)");
+            File insertFile = new File(userDir, entrada.fichero);
+            try (FicheroRechazos rechazos = new FicheroRechazos(new File(userDir, entrada.fichero.replace("_inserts.sql", "_rechazados.sql")), encoding,
+                    diario.reanudado())) {
+                importTableInserts(conn, userDir, insertFile, entrada.objeto, encoding, rechazos);
+                if (rechazos.total() > 0) {
+                    System.err.println(rechazos.total() + " filas rechazadas de " + entrada.fichero + ", ver " + rechazos.nombre());
+                }
+            } catch (IOException e) {
+                System.err.println("Error escribiendo los rechazos de " + entrada.fichero + ": " + e.getMessage());
+            }
         }
     }
 
-    private static void importTableInserts(Connection conn, File userDir, File insertFile, String encoding) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(insertFile), encoding))) {
+    private static void importTableInserts(Connection conn, File userDir, File insertFile, String tabla, String encoding,
+            FicheroRechazos rechazos) {
+        Charset charset = Charset.forName(encoding);
+        if (!Arrays.equals("\nA".getBytes(charset), new byte[]{'\n', 'A'})) {
+            // Codificación no compatible con ASCII: no se puede cortar el fichero por bytes de fin de línea
+            importTableInsertsSecuencial(conn, userDir, insertFile, tabla, encoding, rechazos);
+            return;
+        }
+
+        String nombre = insertFile.getName();
+        try (FileChannel canal = FileChannel.open(insertFile.toPath())) {
+            List<long[]> pendientes = diario.rangosPendientes(nombre, canal.size());
+            if (pendientes.isEmpty()) {
+                System.out.println("Ya importado según " + CHECKPOINT_FILE + ", se omite.");
+                return;
+            }
+            long bytesPendientes = 0;
+            for (long[] rango : pendientes) bytesPendientes += rango[1] - rango[0];
+
+            if (bytesPendientes < umbralParalelo || hilosImportacion <= 1) {
+                // Fichero pequeño: se carga en la sesión principal
+                for (long[] rango : pendientes) {
+                    importarTramo(conn, userDir, canal, rango, charset, encoding, nombre, tabla, rechazos);
+                }
+                return;
+            }
+
+            // Un único rango pendiente se reparte entre los hilos; si hay varios huecos (reanudación) cada uno es un tramo
+            List<long[]> tramos = pendientes.size() == 1
+                    ? calcularTramos(canal, pendientes.get(0)[0], pendientes.get(0)[1], hilosImportacion)
+                    : pendientes;
+
+            System.out.println("Cargando " + nombre + " en " + tramos.size() + " tramos paralelos");
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(tramos.size(), hilosImportacion));
+            try {
+                List<Future<Void>> resultados = new ArrayList<>();
+                for (long[] tramo : tramos) {
+                    resultados.add(executor.submit(() -> {
+                        try (Connection sesion = pool.getConnection()) {
+                            importarTramo(sesion, userDir, canal, tramo, charset, encoding, nombre, tabla, rechazos);
+                        }
+                        return null;
+                    }));
+                }
+                for (int i = 0; i < resultados.size(); i++) {
+                    try {
+                        resultados.get(i).get();
+                    } catch (ExecutionException e) {
+                        System.err.println("Error importando el tramo " + (i + 1) + " de " + nombre + ": " + e.getCause().getMessage());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdownNow();
+            }
+        } catch (IOException | SQLException e) {
+            System.err.println("Error importando desde " + nombre + ": " + e.getMessage());
+        }
+    }
+
+    // Carga las líneas del tramo [inicio, fin) del fichero en la sesión indicada, confirmando y anotando
+    // en el diario cada "filasPorCommit" líneas. Si la sesión falla se deshace el lote en curso.
+    private static void importarTramo(Connection conn, File userDir, FileChannel canal, long[] tramo, Charset charset, String encoding,
+            String nombre, String tabla, FicheroRechazos rechazos) throws IOException, SQLException {
+        LectorLineas lector = new LectorLineas(canal, tramo[0], tramo[1], charset);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        long lectura = 0;
+        try (Statement stmt = conn.createStatement()) {
+            long inicioLote = tramo[0];
+            int lineasLote = 0;
             String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
+            long inicio = System.nanoTime();
+            while ((line = lector.siguienteLinea()) != null) {
+                lectura += System.nanoTime() - inicio;
+                procesarLineaInsert(conn, stmt, userDir, line, tabla, encoding, rechazos);
+                if (++lineasLote >= filasPorCommit) {
+                    confirmarLote(conn, tabla, rechazos);
+                    diario.registrarRango(nombre, inicioLote, lector.posicion());
+                    inicioLote = lector.posicion();
+                    lineasLote = 0;
+                }
+                inicio = System.nanoTime();
+            }
+            if (lector.posicion() > inicioLote) {
+                confirmarLote(conn, tabla, rechazos);
+                diario.registrarRango(nombre, inicioLote, lector.posicion());
+            }
+            metricas.addBytes(tabla, tramo[1] - tramo[0]);
+        } catch (IOException | SQLException | RuntimeException e) {
+            deshacerLote(conn, rechazos);
+            throw e;
+        } finally {
+            metricas.addPhase(tabla, OracleRunMetrics.PARSE, lectura);
+            conn.setAutoCommit(autoCommit);
+        }
+    }
 
-                // Detectar si hay referencias a archivos BLOB/CLOB
-                Matcher matcher = FILE_REF_PATTERN.matcher(line);
-                if (matcher.find()) {
-                    // Hay al menos un campo BLOB/CLOB en este insert
-                    ejecutarInsertConFicheros(conn, userDir, line, encoding);
-                } else {
-                    // Insert normal, ejecutar tal cual
-                    try (Statement stmt = conn.createStatement()) {
-                        stmt.executeUpdate(line);
+    // Divide [inicio, fin) en "partes" tramos de tamaño similar, ajustando cada corte al siguiente fin de línea
+    private static List<long[]> calcularTramos(FileChannel canal, long inicio, long fin, int partes) throws IOException {
+        List<long[]> tramos = new ArrayList<>();
+        long origen = inicio;
+        long tamano = fin - inicio;
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        for (int i = 1; i <= partes && inicio < fin; i++) {
+            long corte = i == partes ? fin : Math.max(inicio, origen + tamano / partes * i);
+            // Avanzar hasta justo después del siguiente '\n'
+            while (corte < fin) {
+                buffer.clear();
+                int leidos = canal.read(buffer, corte);
+                if (leidos <= 0) {
+                    corte = fin;
+                    break;
+                }
+                int j = 0;
+                while (j < leidos && buffer.get(j) != '\n') j++;
+                corte = Math.min(fin, corte + j);
+                if (j < leidos) {
+                    corte = Math.min(fin, corte + 1);
+                    break;
+                }
+            }
+            if (corte > inicio) tramos.add(new long[]{inicio, corte});
+            inicio = corte;
+        }
+        return tramos;
+    }
+
+    // Versión con BufferedReader para codificaciones que no permiten cortar el fichero por bytes.
+    // El diario anota el número de líneas confirmadas en lugar de rangos de bytes.
+    private static void importTableInsertsSecuencial(Connection conn, File userDir, File insertFile, String tabla, String encoding,
+            FicheroRechazos rechazos) {
+        String nombre = insertFile.getName();
+        long completadas = diario.lineasCompletadas(nombre);
+        // Bytes reales de cada línea en el fichero, con su salto de línea
+        Charset charset = Charset.forName(encoding);
+        int bytesSalto = "\n".getBytes(charset).length;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(insertFile), encoding))) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            long lectura = 0;
+            try (Statement stmt = conn.createStatement()) {
+                long numeroLinea = 0;
+                int lineasLote = 0;
+                String line;
+                long inicio = System.nanoTime();
+                while ((line = reader.readLine()) != null) {
+                    lectura += System.nanoTime() - inicio;
+                    if (++numeroLinea <= completadas) {
+                        inicio = System.nanoTime();
+                        continue;
+                    }
+                    metricas.addBytes(tabla, line.getBytes(charset).length + bytesSalto);
+                    procesarLineaInsert(conn, stmt, userDir, line, tabla, encoding, rechazos);
+                    if (++lineasLote >= filasPorCommit) {
+                        confirmarLote(conn, tabla, rechazos);
+                        diario.registrarLineas(nombre, numeroLinea);
+                        lineasLote = 0;
                     }
+                    inicio = System.nanoTime();
                 }
+                if (lineasLote > 0) {
+                    confirmarLote(conn, tabla, rechazos);
+                    diario.registrarLineas(nombre, numeroLinea);
+                }
+            } catch (IOException | SQLException | RuntimeException e) {
+                deshacerLote(conn, rechazos);
+                throw e;
+            } finally {
+                metricas.addPhase(tabla, OracleRunMetrics.PARSE, lectura);
+                conn.setAutoCommit(autoCommit);
             }
         } catch (IOException | SQLException e) {
-            System.err.println("Error importando desde " + insertFile.getName() + ": " + e.getMessage());
+            System.err.println("Error importando desde " + nombre + ": " + e.getMessage());
+        }
+    }
+
+    private static void confirmarLote(Connection conn, String tabla, FicheroRechazos rechazos) throws SQLException, IOException {
+        long inicio = System.nanoTime();
+        conn.commit();
+        metricas.addPhase(tabla, OracleRunMetrics.EXECUTE, System.nanoTime() - inicio);
+        rechazos.confirmar();
+    }
+
+    private static void deshacerLote(Connection conn, FicheroRechazos rechazos) {
+        rechazos.descartar();
+        try {
+            conn.rollback();
+        } catch (SQLException ignored) {
+            // La sesión ya no es utilizable; el lote no se anotó en el diario y se repetirá
+        }
+    }
+
+    // Ejecuta una línea del fichero de inserts. Los errores de la fila se envían al fichero de rechazos;
+    // los errores de conexión (SQLSTATE 08xxx o sesión cerrada) se propagan para abandonar el tramo.
+    private static void procesarLineaInsert(Connection conn, Statement stmt, File userDir, String line, String tabla, String encoding,
+            FicheroRechazos rechazos) throws SQLException, IOException {
+        long inicio = System.nanoTime();
+        line = line.trim();
+        if (line.isEmpty()) return;
+
+        long ejecucion = inicio;
+        try {
+            // Detectar si hay referencias a archivos BLOB/CLOB
+            Matcher matcher = FILE_REF_PATTERN.matcher(line);
+            boolean conFicheros = matcher.find();
+            ejecucion = System.nanoTime();
+            metricas.addPhase(tabla, OracleRunMetrics.PARSE, ejecucion - inicio);
+            if (conFicheros) {
+                // Hay al menos un campo BLOB/CLOB en este insert
+                ejecutarInsertConFicheros(conn, userDir, line, encoding);
+            } else {
+                // Insert normal, ejecutar sin el ';' final que añade el exportador
+                stmt.executeUpdate(line.endsWith(";") ? line.substring(0, line.length() - 1) : line);
+            }
+            metricas.addRows(tabla, 1);
+        } catch (SQLException e) {
+            if ((e.getSQLState() != null && e.getSQLState().startsWith("08")) || conn.isClosed()) throw e;
+            metricas.addError(tabla);
+            rechazos.rechazar(line, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            metricas.addError(tabla);
+            rechazos.rechazar(line, e.getMessage());
+        } finally {
+            long fin = System.nanoTime();
+            metricas.addPhase(tabla, OracleRunMetrics.EXECUTE, fin - ejecucion);
+            metricas.record(tabla, fin - inicio, line);
+        }
+    }
+
+    // Cabecera del diario: huella de la exportación (manifiesto y ficheros del plan) y destino de la carga
+    private static String cabeceraDiario(File userDir, Map<String, List<EntradaManifiesto>> plan, Properties config, String schema)
+            throws IOException {
+        MessageDigest huella;
+        try {
+            huella = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        File manifiesto = new File(userDir, MANIFEST_FILE);
+        StringBuilder identidad = new StringBuilder(manifiesto.length() + "/" + manifiesto.lastModified());
+        for (String tipo : new TreeSet<>(plan.keySet())) {
+            for (EntradaManifiesto entrada : plan.get(tipo)) {
+                File fichero = new File(userDir, entrada.fichero);
+                identidad.append(';').append(entrada.fichero).append('/').append(fichero.length()).append('/').append(fichero.lastModified());
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : huella.digest(identidad.toString().getBytes("UTF-8"))) hex.append(String.format("%02x", b));
+        return "CABECERA\t" + hex + "\t" + config.getProperty("jdbc.url") + "\t" + config.getProperty("jdbc.user") + "\t" + schema;
+    }
+
+    // Diario de puntos de control de la importación. Cada línea es un registro independiente, tras la
+    // línea de cabecera:
+    //   SCRIPT <fichero>                 script DDL ejecutado
+    //   RANGO  <fichero> <desde> <hasta> bytes [desde, hasta) confirmados
+    //   LINEAS <fichero> <n>             primeras n líneas confirmadas (lectura secuencial)
+    private static class DiarioPuntosControl implements Closeable {
+        private final Set<String> scripts = new HashSet<>();
+        private final Map<String, List<long[]>> rangos = new HashMap<>();
+        private final Map<String, Long> lineas = new HashMap<>();
+        private final BufferedWriter writer;
+        private final boolean reanudado;
+
+        DiarioPuntosControl(File fichero, String cabecera, String encoding) throws IOException {
+            boolean valido = false;
+            if (fichero.exists()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fichero), encoding))) {
+                    String line = reader.readLine();
+                    valido = cabecera.equals(line);
+                    while (valido && (line = reader.readLine()) != null) {
+                        String[] campos = line.split("\t");
+                        try {
+                            if (campos[0].equals("SCRIPT") && campos.length == 2) {
+                                scripts.add(campos[1]);
+                            } else if (campos[0].equals("RANGO") && campos.length == 4) {
+                                anotarRango(campos[1], Long.parseLong(campos[2]), Long.parseLong(campos[3]));
+                            } else if (campos[0].equals("LINEAS") && campos.length == 3) {
+                                lineas.merge(campos[1], Long.parseLong(campos[2]), Math::max);
+                            }
+                        } catch (NumberFormatException e) {
+                            // Última línea incompleta por una interrupción: se ignora
+                        }
+                    }
+                }
+                if (!valido) {
+                    System.out.println(CHECKPOINT_FILE + " es de otra exportación o de otro destino: se descarta.");
+                }
+            }
+            reanudado = valido;
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fichero, valido), encoding));
+            if (!valido) escribir(cabecera);
+        }
+
+        // Se continúa un diario válido de esta misma exportación y destino
+        boolean reanudado() {
+            return reanudado;
+        }
+
+        boolean tieneEntradas() {
+            return !scripts.isEmpty() || !rangos.isEmpty() || !lineas.isEmpty();
+        }
+
+        synchronized boolean scriptCompletado(String fichero) {
+            return scripts.contains(fichero);
+        }
+
+        synchronized long lineasCompletadas(String fichero) {
+            return lineas.getOrDefault(fichero, 0L);
+        }
+
+        // Huecos de [0, tamano) que no están cubiertos por ningún rango confirmado
+        synchronized List<long[]> rangosPendientes(String fichero, long tamano) {
+            List<long[]> confirmados = new ArrayList<>(rangos.getOrDefault(fichero, Collections.<long[]>emptyList()));
+            confirmados.sort(Comparator.comparingLong(r -> r[0]));
+            List<long[]> pendientes = new ArrayList<>();
+            long posicion = 0;
+            for (long[] rango : confirmados) {
+                if (rango[0] > posicion) pendientes.add(new long[]{posicion, Math.min(rango[0], tamano)});
+                posicion = Math.max(posicion, rango[1]);
+            }
+            if (posicion < tamano) pendientes.add(new long[]{posicion, tamano});
+            return pendientes;
+        }
+
+        synchronized void registrarScript(String fichero) {
+            scripts.add(fichero);
+            escribir("SCRIPT\t" + fichero);
+        }
+
+        synchronized void registrarRango(String fichero, long desde, long hasta) {
+            anotarRango(fichero, desde, hasta);
+            escribir("RANGO\t" + fichero + "\t" + desde + "\t" + hasta);
+        }
+
+        synchronized void registrarLineas(String fichero, long n) {
+            lineas.put(fichero, n);
+            escribir("LINEAS\t" + fichero + "\t" + n);
+        }
+
+        private void anotarRango(String fichero, long desde, long hasta) {
+            rangos.computeIfAbsent(fichero, k -> new ArrayList<>()).add(new long[]{desde, hasta});
+        }
+
+        private void escribir(String registro) {
+            try {
+                writer.write(registro);
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                System.err.println("Error escribiendo en " + CHECKPOINT_FILE + ": " + e.getMessage());
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    // Fichero de filas rechazadas de una tabla, compartido por todas las sesiones que la cargan. Cada
+    // sesión (hilo) guarda los rechazos de su lote en curso y los escribe al confirmarlo; si el lote se
+    // deshace se descartan. Se abre al primer rechazo confirmado, añadiendo al fichero existente solo si
+    // se reanuda un diario válido.
+    private static class FicheroRechazos implements Closeable {
+        private final File fichero;
+        private final String encoding;
+        private final boolean anadir;
+        private final ThreadLocal<List<String>> pendientes = ThreadLocal.withInitial(ArrayList::new);
+        private BufferedWriter writer;
+        private long total;
+
+        FicheroRechazos(File fichero, String encoding, boolean anadir) {
+            this.fichero = fichero;
+            this.encoding = encoding;
+            this.anadir = anadir;
+            // Rechazos de una importación anterior que no se continúa
+            if (!anadir && fichero.exists() && !fichero.delete()) {
+                System.err.println("No se pudo borrar el fichero de rechazos anterior " + fichero.getName());
+            }
+        }
+
+        void rechazar(String line, String error) {
+            List<String> lote = pendientes.get();
+            lote.add("-- " + String.valueOf(error).replaceAll("\\s+", " ").trim());
+            lote.add(line);
+        }
+
+        // Escribe los rechazos del lote que la sesión acaba de confirmar
+        void confirmar() throws IOException {
+            List<String> lote = pendientes.get();
+            if (lote.isEmpty()) return;
+            synchronized (this) {
+                if (writer == null) {
+                    writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fichero, anadir), encoding));
+                }
+                for (String linea : lote) {
+                    writer.write(linea);
+                    writer.newLine();
+                }
+                writer.flush();
+                total += lote.size() / 2;
+            }
+            lote.clear();
+        }
+
+        void descartar() {
+            pendientes.get().clear();
+        }
+
+        synchronized long total() {
+            return total;
+        }
+
+        String nombre() {
+            return fichero.getName();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (writer != null) writer.close();
+        }
+    }
+
+    // Recorre por líneas un tramo de un fichero mapeado en memoria por ventanas
+    private static class LectorLineas {
+        private final FileChannel canal;
+        private final long fin;
+        private final Charset charset;
+        private long posicion;
+        private MappedByteBuffer ventana;
+        private long inicioVentana;
+        private byte[] linea = new byte[8192];
+
+        LectorLineas(FileChannel canal, long inicio, long fin, Charset charset) {
+            this.canal = canal;
+            this.posicion = inicio;
+            this.fin = fin;
+            this.charset = charset;
+        }
+
+        // Posición del fichero a partir de la cual empieza la siguiente línea
+        long posicion() {
+            return posicion;
+        }
+
+        String siguienteLinea() throws IOException {
+            if (posicion >= fin) return null;
+            int tamanoVentana = VENTANA_MAPEO;
+            while (true) {
+                if (ventana == null || posicion < inicioVentana || posicion >= inicioVentana + ventana.limit()) {
+                    mapear(posicion, tamanoVentana);
+                }
+                int desde = (int) (posicion - inicioVentana);
+                int limite = ventana.limit();
+                int i = desde;
+                while (i < limite && ventana.get(i) != '\n') i++;
+
+                boolean finTramo = inicioVentana + limite >= fin;
+                if (i < limite || finTramo) {
+                    int longitud = i - desde;
+                    posicion = inicioVentana + i + (i < limite ? 1 : 0);
+                    if (longitud > 0 && ventana.get(desde + longitud - 1) == '\r') longitud--;
+                    if (linea.length < longitud) linea = new byte[Math.max(longitud, linea.length * 2)];
+                    ByteBuffer copia = ventana.duplicate();
+                    copia.position(desde);
+                    copia.get(linea, 0, longitud);
+                    return new String(linea, 0, longitud, charset);
+                }
+                // La línea no cabe en la ventana actual: volver a mapear desde su inicio con una ventana mayor
+                if (desde == 0) tamanoVentana = (int) Math.min(Integer.MAX_VALUE, (long) limite * 2);
+                mapear(posicion, tamanoVentana);
+            }
+        }
+
+        private void mapear(long desde, int tamano) throws IOException {
+            inicioVentana = desde;
+            ventana = canal.map(FileChannel.MapMode.READ_ONLY, desde, Math.min(tamano, fin - desde));
         }
     }
 
@@ -152,6 +765,7 @@ public class OracleTableImporter {
                     if (!dataFile.exists()) throw new IOException("No se encuentra el fichero: " + fileName);
 
                     byte[] decoded = Base64.getDecoder().decode(readFileToString(dataFile, encoding));
+                    metricas.addLob(tablaRef, decoded.length);
                     if (tipo.equals("BLOB")) {
                         pstmt.setBlob(i + 1, new ByteArrayInputStream(decoded));
                     } else if (tipo.equals("CLOB")) {
@@ -200,10 +814,8 @@ public class OracleTableImporter {
     }
 
     private static Properties loadConfig() {
-        Properties config = new Properties();
-        try (InputStream input = new FileInputStream(CONFIG_FILE)) {
-            config.load(input);
-            return config;
+        try {
+            return OracleConnectionPool.loadConfig(CONFIG_FILE);
         } catch (IOException e) {
             System.err.println("No se pudo cargar el archivo de configuración " + CONFIG_FILE);
             return null;
@@ -2,8 +2,12 @@
  * Clase para la ejecución automática de scripts SQL sobre una base de datos Oracle.
  * 
  * El programa lee un archivo de configuración (OracleScriptRunner.ini) donde se especifican los datos
- * de conexión a la base de datos (IP, puerto, SID, usuario, clave), el archivo SQL a procesar,
+ * de conexión a la base de datos (jdbc.url, jdbc.user y jdbc.password), el archivo SQL a procesar,
  * la codificación del archivo y si se debe eliminar el punto y coma al final de cada sentencia.
+ * El archivo sigue el formato común de OracleConnectionPool (../Comun), el mismo .properties que el
+ * exportador y el importador: IP, PUERTO, SID, USUARIO y CLAVE siguen valiendo como alias obsoletos, y
+ * las claves "pool.*" ajustan la caché de sentencias del driver, el prefetch, el SDU y, si se indican,
+ * los formatos NLS de las sesiones.
  * 
  * Si se proporciona un parámetro al ejecutar la aplicación, este se usará como nombre del
  * archivo SQL en lugar del indicado en la configuración.
@@ -11,6 +15,13 @@
  * El programa procesa cada línea del archivo SQL, eliminando comentarios (líneas que empiezan
  * por "--" o bloques entre "/ *" y "* /"), y ejecuta las sentencias SQL una a una.
  * 
+ * El archivo se lee de forma incremental, sin cargarlo entero en memoria. Con MODO_SENTENCIAS=LINEA
+ * (por defecto) cada línea física es una sentencia. Con MODO_SENTENCIAS=MULTILINEA un analizador léxico
+ * de una sola pasada reconoce sentencias que ocupan varias líneas terminadas en ";", bloques PL/SQL
+ * (BEGIN, DECLARE, CREATE FUNCTION/PROCEDURE/PACKAGE/TRIGGER/TYPE...) terminados por una línea con "/",
+ * literales entre comillas (incluido q'[...]') y comentarios que abarcan varias líneas. En este modo
+ * el ";" final siempre actúa como separador y no se envía a la base de datos.
+ * 
  * - Las sentencias ejecutadas correctamente se guardan en el archivo OK.SQL (modo append).
  * - Las sentencias con error se guardan en el archivo KO.SQL (modo append).
  * - Los comentarios se guardan también en OK.SQL.
@@ -22,44 +33,295 @@
  * 
  * El programa permite interrumpir la ejecución pulsando ENTER.
  * 
- * El archivo SQL original se actualiza al finalizar, eliminando las 
- * sentencias ejecutadas correctamente y dejando solo las que generaron error.
+ * El resultado de cada sentencia (OK, KO o COMENTARIO) se anota en un diario junto al archivo SQL
+ * ("<ARCHIVO_SQL>.journal"). Un único hilo escritor mantiene abiertos OK.SQL, KO.SQL y el diario,
+ * y los vuelca a disco cada DIARIO_VOLCADO_MS milisegundos (0 = en cada sentencia), con fsync si
+ * DIARIO_FSYNC=SI. El archivo SQL original no se modifica: al volver a lanzar el mismo archivo se
+ * omiten las sentencias ya anotadas como OK o COMENTARIO y se reintentan las demás. Si el archivo
+ * (tamaño o fecha) o el MODO_SENTENCIAS han cambiado, el diario se descarta y se empieza de nuevo.
+ * El diario se anota después de cada commit, así que la reanudación es "al menos una vez": si el
+ * proceso se corta entre el commit y el volcado del diario, las sentencias confirmadas en ese intervalo
+ * se vuelven a ejecutar al reanudar (ver OracleScriptRunner.ini).
+ * 
+ * Con MODO_LOTES=SI las sentencias DML consecutivas (INSERT, UPDATE, DELETE, MERGE) se envían en
+ * lotes JDBC de TAMANO_LOTE sentencias y se confirman cada COMMIT_CADA sentencias. Si un lote falla
+ * se deshace hasta el savepoint previo y se divide en mitades hasta aislar las sentencias erróneas,
+ * de modo que OK.SQL y KO.SQL quedan igual que en la ejecución sentencia a sentencia. Las sentencias
+ * que no son DML se ejecutan de forma individual tras confirmar lo pendiente.
+ * Lo que ahorra depende de CONVERTIR_LITERALES. Con NO, el lote es un Statement con textos distintos
+ * y el driver thin de Oracle lo envía sentencia a sentencia: se ahorran commits, no viajes de red (un
+ * script de 2 millones de sentencias sigue haciendo unos 2 millones de viajes). Con SI, las sentencias
+ * consecutivas con la misma forma van en un único executeBatch de su PreparedStatement, es decir, en
+ * un viaje por lote.
+ * 
+ * Con SESIONES_PARALELAS=N (N > 1) las sentencias INSERT, UPDATE, DELETE y MERGE sobre una única
+ * tabla se reparten entre N sesiones según un hash del nombre de la tabla, de modo que las sentencias
+ * de una misma tabla se ejecutan en el orden del script. El resto de sentencias (DDL, PL/SQL o
+ * aquellas cuya tabla no se reconoce) actúan como barrera: se espera a que todas las sesiones
+ * terminen y confirmen lo pendiente y se ejecutan en la sesión principal. El reparto usa el nombre de
+ * la tabla sin comillas ni esquema. En MODO_LOTES una sesión que se queda sin sentencias confirma lo
+ * pendiente, para que sus bloqueos no dejen esperando a otra sesión (claves únicas o ajenas compartidas).
+ * 
+ * Con CONVERTIR_LITERALES=SI los literales de texto y numéricos de la lista VALUES (...) de los INSERT
+ * y de las cláusulas SET y WHERE de UPDATE, DELETE y MERGE se sustituyen por variables de enlace, y cada
+ * forma normalizada se prepara una sola vez por sesión en una caché LRU de CACHE_SENTENCIAS
+ * PreparedStatement. Así las sentencias que solo difieren en los valores reutilizan el mismo cursor en
+ * el servidor. No se tocan las subconsultas (un número en un ORDER BY o GROUP BY es una posición de
+ * columna), las listas IN (...) ni los hints. Ojo con las columnas CHAR: comparadas en un WHERE con una
+ * variable de enlace no se rellenan con espacios como ocurre con un literal. Los literales de fecha (DATE '...', TIMESTAMP '...',
+ * INTERVAL '...') y los nacionales (N'...') se mantienen. Si la forma con variables falla, la sentencia
+ * se reintenta con sus literales originales antes de darla por errónea.
+ * 
+ * Al terminar se escribe un informe de métricas (OracleRunMetrics, en ../Comun) en INFORME_METRICAS
+ * con el histograma de latencias por forma de sentencia ("INSERT CLIENTES", "CREATE"...), el tiempo de
+ * lectura del script (PARSE) y de ejecución (EXECUTE), y en INFORME_LENTAS las METRICAS_TOP sentencias
+ * y formas más lentas. En MODO_LOTES la latencia registrada es la de cada lote, bajo la clave LOTE, y el
+ * tiempo de ejecución se reparte entre las formas de sus sentencias. Los bytes de LECTOR son los bytes
+ * del fichero leídos, no caracteres.
  */
 import java.io.*;
+import java.math.BigDecimal;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
 import java.util.regex.*;
 
 public class OracleScriptRunner {
 
-    private static Map<String, String> leerConfiguracion(String ruta) throws IOException {
-        Map<String, String> config = new HashMap<>();
-        BufferedReader reader = new BufferedReader(new FileReader(ruta));
-        String linea;
-        while ((linea = reader.readLine()) != null) {
-            linea = linea.trim();
-            if (linea.isEmpty() || linea.startsWith("#")) continue;
-            String[] partes = linea.split("=", 2);
-            if (partes.length >= 2) {
-                config.put(partes[0].trim(), partes[1].trim());
-            }
-        }
-        reader.close();
-        return config;
-    }
+    // Métricas de la ejecución, compartidas por todas las sesiones
+    private static OracleRunMetrics metricas;
 
     // Función para eliminar comentarios y devolver si es comentario
     private static String[] eliminarComentarios(String linea) {
-        boolean esComentario = linea.trim().toUpperCase().startsWith("REM") || linea.trim().startsWith("--") || (linea.trim().startsWith("/*") && linea.trim().endsWith("*/"));
+        String recortada = linea.trim();
+        boolean esComentario = recortada.regionMatches(true, 0, "REM", 0, 3) || recortada.startsWith("--")
+                || (recortada.startsWith("/*") && recortada.endsWith("*/"));
 
-        linea = linea.replaceAll("^rem.*", "");
-        linea = linea.replaceAll("^REM.*", "");
-        linea = linea.replaceAll("^--.*", "");
-        linea = linea.replaceAll("^/\\*.*?\\*/", "");
+        if (linea.startsWith("rem") || linea.startsWith("REM") || linea.startsWith("--")) {
+            linea = "";
+        } else if (linea.startsWith("/*")) {
+            int fin = linea.indexOf("*/", 2);
+            if (fin >= 0) linea = linea.substring(fin + 2);
+        }
 
         return new String[] { linea.trim(), esComentario ? "COMENTARIO" : "SENTENCIA" };
     }
 
+    // Sentencia (o comentario) leída del script
+    private static class Sentencia {
+        final long numero;        // Ordinal dentro del script, identifica la sentencia en el diario
+        final long linea;         // Línea física donde empieza
+        final String original;    // Texto tal como aparece en el script, para OK.SQL / KO.SQL
+        final String sql;         // Texto a ejecutar, o null si es un comentario
+
+        Sentencia(long numero, long linea, String original, String sql) {
+            this.numero = numero;
+            this.linea = linea;
+            this.original = original;
+            this.sql = sql;
+        }
+    }
+
+    // Lector incremental del script. Solo mantiene en memoria la sentencia en curso.
+    private static class LectorSentencias implements Closeable {
+        private static final Pattern INICIO_PLSQL = Pattern.compile(
+                "^(BEGIN|DECLARE|CREATE\\s+(OR\\s+REPLACE\\s+)?((NON)?EDITIONABLE\\s+)?(FUNCTION|PROCEDURE|PACKAGE|TRIGGER|TYPE|LIBRARY|JAVA))\\b");
+        private static final int MAX_CABECERA = 200;
+
+        private final BufferedReader reader;
+        private final boolean multilinea;
+        private final boolean eliminarPuntoYComa;
+        private final ArrayDeque<Sentencia> preparadas = new ArrayDeque<>();
+        private long numeroLinea = 0;
+        private long numeroSentencia = 0;
+        private boolean finArchivo = false;
+
+        // Estado del modo multilínea
+        private final StringBuilder texto = new StringBuilder();    // Texto de la sentencia en curso
+        private final StringBuilder cabecera = new StringBuilder(); // Inicio del código sin comentarios
+        private long lineaInicio;
+        private boolean tieneCodigo;
+        private Boolean plsql;
+        private boolean enComentarioBloque;
+        private char cierreLiteral;  // 0 fuera de un literal
+        private boolean literalQ;    // Literal q'x...x'
+
+        LectorSentencias(BufferedReader reader, boolean multilinea, boolean eliminarPuntoYComa) {
+            this.reader = reader;
+            this.multilinea = multilinea;
+            this.eliminarPuntoYComa = eliminarPuntoYComa;
+        }
+
+        Sentencia siguiente() throws IOException {
+            while (preparadas.isEmpty() && !finArchivo) {
+                String linea = reader.readLine();
+                if (linea == null) {
+                    finArchivo = true;
+                    if (texto.length() > 0) emitir(texto.toString(), tieneCodigo ? texto.toString() : null);
+                    break;
+                }
+                numeroLinea++;
+                if (multilinea) {
+                    procesarLinea(linea);
+                } else {
+                    procesarLineaSimple(linea);
+                }
+            }
+            return preparadas.poll();
+        }
+
+        // Modo LINEA: cada línea física es una sentencia
+        private void procesarLineaSimple(String linea) {
+            String[] resultado = eliminarComentarios(linea);
+            String sql = resultado[0];
+            if (eliminarPuntoYComa && sql.endsWith(";")) {
+                sql = sql.substring(0, sql.length() - 1).trim();
+            }
+            boolean comentario = resultado[1].equals("COMENTARIO") || sql.isEmpty();
+            preparadas.add(new Sentencia(++numeroSentencia, numeroLinea, linea.trim(), comentario ? null : sql));
+        }
+
+        // Modo MULTILINEA: el estado léxico se conserva entre líneas
+        private void procesarLinea(String linea) {
+            String recortada = linea.trim();
+            boolean dentroDeLiteral = enComentarioBloque || cierreLiteral != 0;
+            if (!dentroDeLiteral && recortada.equals("/")) {
+                // Fin de bloque PL/SQL (o de sentencia al estilo SQL*Plus); sin sentencia en curso se ignora
+                if (tieneCodigo) {
+                    emitir(texto + "\n/", texto.toString());
+                } else {
+                    emitirComentario(recortada);
+                }
+                return;
+            }
+            if (!dentroDeLiteral && texto.length() == 0
+                    && recortada.regionMatches(true, 0, "REM", 0, 3)
+                    && (recortada.length() == 3 || Character.isWhitespace(recortada.charAt(3)))) {
+                emitirComentario(recortada);
+                return;
+            }
+
+            if (texto.length() == 0) {
+                lineaInicio = numeroLinea;
+            } else {
+                texto.append('\n');
+                if (cabecera.length() > 0) anadirCabecera(' ');
+            }
+            int i = texto.length();
+            texto.append(linea);
+
+            while (i < texto.length()) {
+                char c = texto.charAt(i);
+                char siguiente = i + 1 < texto.length() ? texto.charAt(i + 1) : 0;
+
+                if (enComentarioBloque) {
+                    if (c == '*' && siguiente == '/') {
+                        enComentarioBloque = false;
+                        i += 2;
+                    } else {
+                        i++;
+                    }
+                } else if (cierreLiteral != 0) {
+                    if (literalQ) {
+                        if (c == cierreLiteral && siguiente == '\'') {
+                            cierreLiteral = 0;
+                            i += 2;
+                        } else {
+                            i++;
+                        }
+                    } else if (c == '\'' && cierreLiteral == '\'' && siguiente == '\'') {
+                        i += 2; // Comilla escapada
+                    } else {
+                        if (c == cierreLiteral) cierreLiteral = 0;
+                        i++;
+                    }
+                } else if (c == '-' && siguiente == '-') {
+                    i = texto.length(); // Comentario hasta el final de la línea
+                } else if (c == '/' && siguiente == '*') {
+                    enComentarioBloque = true;
+                    i += 2;
+                } else if (c == '\'' || c == '"') {
+                    marcarCodigo(c);
+                    cierreLiteral = c;
+                    literalQ = false;
+                    i++;
+                } else if ((c == 'q' || c == 'Q') && siguiente == '\'' && i + 2 < texto.length()
+                        && (i == 0 || !Character.isLetterOrDigit(texto.charAt(i - 1)) || texto.charAt(i - 1) == 'N' || texto.charAt(i - 1) == 'n')) {
+                    marcarCodigo(c);
+                    cierreLiteral = cierreQ(texto.charAt(i + 2));
+                    literalQ = true;
+                    i += 3;
+                } else if (c == ';' && !esPlsql()) {
+                    // Fin de sentencia SQL: el resto de la línea empieza una sentencia nueva
+                    String resto = texto.substring(i + 1);
+                    emitir(texto.substring(0, i + 1), texto.substring(0, i));
+                    lineaInicio = numeroLinea;
+                    texto.append(resto);
+                    i = 0;
+                } else {
+                    if (Character.isWhitespace(c)) {
+                        if (cabecera.length() > 0) anadirCabecera(' ');
+                    } else {
+                        marcarCodigo(c);
+                    }
+                    i++;
+                }
+            }
+
+            // Una línea que solo contiene comentarios (o nada) se registra como comentario
+            if (!tieneCodigo && !enComentarioBloque) {
+                String comentario = texto.toString().trim();
+                if (!comentario.isEmpty() || recortada.isEmpty()) emitirComentario(comentario);
+                texto.setLength(0);
+            }
+        }
+
+        private void marcarCodigo(char c) {
+            tieneCodigo = true;
+            anadirCabecera(Character.toUpperCase(c));
+        }
+
+        private void anadirCabecera(char c) {
+            if (cabecera.length() < MAX_CABECERA && !(c == ' ' && cabecera.charAt(cabecera.length() - 1) == ' ')) {
+                cabecera.append(c);
+            }
+        }
+
+        private boolean esPlsql() {
+            if (plsql == null) plsql = INICIO_PLSQL.matcher(cabecera).find();
+            return plsql;
+        }
+
+        private static char cierreQ(char apertura) {
+            switch (apertura) {
+                case '[': return ']';
+                case '{': return '}';
+                case '(': return ')';
+                case '<': return '>';
+                default: return apertura;
+            }
+        }
+
+        private void emitir(String original, String sql) {
+            String sqlRecortado = sql == null ? "" : sql.trim();
+            preparadas.add(new Sentencia(++numeroSentencia, lineaInicio, original.trim(), sqlRecortado.isEmpty() ? null : sqlRecortado));
+            texto.setLength(0);
+            cabecera.setLength(0);
+            tieneCodigo = false;
+            plsql = null;
+        }
+
+        private void emitirComentario(String comentario) {
+            preparadas.add(new Sentencia(++numeroSentencia, numeroLinea, comentario, null));
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
     // Imprimir caracteres con color (solo funciona en terminales ANSI)
     private static void printColored(String color, String text) {
         String code = "";
@@ -80,26 +342,926 @@ public class OracleScriptRunner {
         return false;
     }
 
+    // Indica si la sentencia es DML y por tanto se puede agrupar en un lote JDBC
+    private static boolean esDML(String sentencia) {
+        int fin = 0;
+        while (fin < sentencia.length() && Character.isLetter(sentencia.charAt(fin))) fin++;
+        String verbo = sentencia.substring(0, fin).toUpperCase();
+        return verbo.equals("INSERT") || verbo.equals("UPDATE") || verbo.equals("DELETE") || verbo.equals("MERGE");
+    }
+
+    // Diario de ejecución con un único hilo escritor. Recibe el resultado de cada sentencia y lo escribe en
+    // OK.SQL / KO.SQL y en el diario "<archivo>.journal" (una línea "NUMERO<TAB>ESTADO" por registro).
+    private static class DiarioEjecucion implements Closeable {
+        static final String OK = "OK";
+        static final String KO = "KO";
+        static final String COMENTARIO = "COMENTARIO";
+
+        private static final Registro FIN = new Registro(null, 0, null);
+
+        private static class Registro {
+            final String estado;
+            final long numero;
+            final String lineaOriginal;
+
+            Registro(String estado, long numero, String lineaOriginal) {
+                this.estado = estado;
+                this.numero = numero;
+                this.lineaOriginal = lineaOriginal;
+            }
+        }
+
+        private final BlockingQueue<Registro> cola = new ArrayBlockingQueue<>(10000);
+        private final BitSet completadas = new BitSet();
+        private final String codificacion;
+        private final long volcadoMs;
+        private final boolean fsync;
+        private final FileOutputStream diarioStream;
+        private final BufferedWriter diario;
+        private final FileOutputStream okStream;
+        private final BufferedWriter ok;
+        private FileOutputStream koStream;
+        private BufferedWriter ko;
+        private final Thread escritor;
+        private volatile IOException error;
+
+        DiarioEjecucion(String archivoSql, String modo, String codificacion, long volcadoMs, boolean fsync) throws IOException {
+            this.codificacion = codificacion;
+            this.volcadoMs = volcadoMs;
+            this.fsync = fsync;
+
+            File sql = new File(archivoSql);
+            File fichero = new File(archivoSql + ".journal");
+            String cabecera = "#ARCHIVO\t" + sql.length() + "\t" + sql.lastModified() + "\t" + modo;
+            boolean reanudar = false;
+            if (fichero.exists()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fichero), codificacion))) {
+                    reanudar = cabecera.equals(reader.readLine());
+                    String linea;
+                    while (reanudar && (linea = reader.readLine()) != null) {
+                        String[] campos = linea.split("\t");
+                        if (campos.length != 2) continue; // Registro incompleto por una interrupción
+                        if (campos[1].equals(OK) || campos[1].equals(COMENTARIO)) {
+                            completadas.set(indice(Long.parseLong(campos[0])));
+                        } else if (campos[1].equals(KO)) {
+                            completadas.clear(indice(Long.parseLong(campos[0])));
+                        }
+                    }
+                }
+            }
+            if (reanudar && !completadas.isEmpty()) {
+                System.out.println("Reanudando desde " + fichero.getName() + ": " + completadas.cardinality() + " sentencias ya procesadas");
+            }
+
+            diarioStream = new FileOutputStream(fichero, reanudar);
+            diario = new BufferedWriter(new OutputStreamWriter(diarioStream, codificacion), 1 << 16);
+            if (!reanudar) {
+                diario.write(cabecera);
+                diario.newLine();
+            }
+            okStream = new FileOutputStream("OK.SQL", true);
+            ok = new BufferedWriter(new OutputStreamWriter(okStream, codificacion), 1 << 16);
+
+            escritor = new Thread(this::escribir, "diario-ejecucion");
+            escritor.start();
+        }
+
+        boolean completada(long numero) throws IOException {
+            return completadas.get(indice(numero));
+        }
+
+        // El BitSet se indexa con int: por encima de Integer.MAX_VALUE sentencias el diario no puede
+        // identificarlas, así que se detiene el proceso en vez de truncar el ordinal y confundir sentencias.
+        private static int indice(long numero) throws IOException {
+            if (numero < 0 || numero > Integer.MAX_VALUE) {
+                throw new IOException("El diario de ejecución admite hasta " + Integer.MAX_VALUE
+                        + " sentencias por script; ordinal fuera de rango: " + numero);
+            }
+            return (int) numero;
+        }
+
+        void registrar(String estado, long numero, String lineaOriginal) throws IOException {
+            if (error != null) throw error;
+            try {
+                Registro registro = new Registro(estado, numero, lineaOriginal);
+                while (!cola.offer(registro, 100, TimeUnit.MILLISECONDS)) {
+                    if (error != null) throw error;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrumpido al registrar la sentencia " + numero);
+            }
+        }
+
+        private void escribir() {
+            long ultimoVolcado = System.currentTimeMillis();
+            boolean pendiente = false;
+            try {
+                while (true) {
+                    Registro registro = pendiente ? cola.poll(Math.max(1, volcadoMs), TimeUnit.MILLISECONDS) : cola.take();
+                    if (registro == FIN) break;
+                    if (registro != null) {
+                        BufferedWriter destino = registro.estado.equals(KO) ? abrirKO() : ok;
+                        destino.write(registro.lineaOriginal);
+                        destino.newLine();
+                        diario.write(registro.numero + "\t" + registro.estado);
+                        diario.newLine();
+                        pendiente = true;
+                    }
+                    if (pendiente && (registro == null || System.currentTimeMillis() - ultimoVolcado >= volcadoMs)) {
+                        volcar();
+                        ultimoVolcado = System.currentTimeMillis();
+                        pendiente = false;
+                    }
+                }
+                volcar();
+            } catch (IOException e) {
+                error = e;
+                System.err.println("Error escribiendo el diario de ejecución: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private BufferedWriter abrirKO() throws IOException {
+            if (ko == null) {
+                koStream = new FileOutputStream("KO.SQL", true);
+                ko = new BufferedWriter(new OutputStreamWriter(koStream, codificacion), 1 << 16);
+            }
+            return ko;
+        }
+
+        // Primero OK.SQL y KO.SQL y después el diario, para que el diario nunca vaya por delante
+        private void volcar() throws IOException {
+            ok.flush();
+            if (ko != null) ko.flush();
+            if (fsync) {
+                okStream.getFD().sync();
+                if (koStream != null) koStream.getFD().sync();
+            }
+            diario.flush();
+            if (fsync) diarioStream.getFD().sync();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (escritor.isAlive()) cola.put(FIN);
+                escritor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                ok.close();
+                if (ko != null) ko.close();
+                diario.close();
+            }
+            if (error != null) throw error;
+        }
+    }
+
+    // Sentencia con los literales sustituidos por "?" y los valores a enlazar, en orden
+    private static class FormaSentencia {
+        private static final Set<String> PREFIJOS_LITERAL = new HashSet<>(Arrays.asList("DATE", "TIMESTAMP", "INTERVAL"));
+
+        final String sql;
+        final List<Object> valores;
+
+        private FormaSentencia(String sql, List<Object> valores) {
+            this.sql = sql;
+            this.valores = valores;
+        }
+
+        void enlazar(PreparedStatement ps) throws SQLException {
+            for (int i = 0; i < valores.size(); i++) {
+                Object valor = valores.get(i);
+                if (valor instanceof BigDecimal) {
+                    ps.setBigDecimal(i + 1, (BigDecimal) valor);
+                } else {
+                    ps.setString(i + 1, (String) valor);
+                }
+            }
+        }
+
+        // Extrae los literales de texto ('...' y q'[...]') y numéricos de las listas VALUES (...) y, en
+        // UPDATE, DELETE y MERGE, de lo que sigue a SET y a WHERE. Nunca dentro de subconsultas (donde un
+        // número puede ser la posición de un ORDER BY o GROUP BY) ni de listas IN (...), cuyo número de
+        // elementos cambia de una sentencia a otra. El resto del texto, los comentarios, los hints y los
+        // identificadores entre comillas dobles se copian tal cual. Si el texto no se puede analizar se
+        // devuelve sin cambios.
+        static FormaSentencia de(String sql) {
+            StringBuilder forma = new StringBuilder(sql.length());
+            List<Object> valores = new ArrayList<>();
+            int n = sql.length();
+            int i = 0;
+            String verbo = null;
+            // zona: se enlaza fuera de paréntesis; cada paréntesis abierto apila si se enlaza dentro de él
+            boolean zona = false;
+            boolean trasValues = false;
+            Deque<Boolean> parentesis = new ArrayDeque<>();
+            boolean enlazar = false;
+            while (i < n) {
+                char c = sql.charAt(i);
+                char siguiente = i + 1 < n ? sql.charAt(i + 1) : 0;
+                if (c == '-' && siguiente == '-') {
+                    int fin = sql.indexOf('\n', i);
+                    fin = fin < 0 ? n : fin;
+                    forma.append(sql, i, fin);
+                    i = fin;
+                } else if (c == '/' && siguiente == '*') {
+                    int fin = sql.indexOf("*/", i + 2);
+                    if (fin < 0) return new FormaSentencia(sql, Collections.emptyList());
+                    forma.append(sql, i, fin + 2);
+                    i = fin + 2;
+                } else if (c == '"') {
+                    int fin = sql.indexOf('"', i + 1);
+                    if (fin < 0) return new FormaSentencia(sql, Collections.emptyList());
+                    forma.append(sql, i, fin + 1);
+                    i = fin + 1;
+                } else if (c == '\'') {
+                    StringBuilder valor = new StringBuilder();
+                    int j = i + 1;
+                    while (true) {
+                        if (j >= n) return new FormaSentencia(sql, Collections.emptyList());
+                        char d = sql.charAt(j);
+                        if (d == '\'') {
+                            if (j + 1 < n && sql.charAt(j + 1) == '\'') {
+                                valor.append('\'');
+                                j += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        valor.append(d);
+                        j++;
+                    }
+                    if (!enlazar || PREFIJOS_LITERAL.contains(palabraAnterior(forma))) {
+                        forma.append(sql, i, j + 1);
+                    } else {
+                        forma.append('?');
+                        valores.add(valor.toString());
+                    }
+                    i = j + 1;
+                } else if (Character.isLetter(c) || c == '_' || c == '$' || c == '#') {
+                    int fin = i;
+                    while (fin < n && (Character.isLetterOrDigit(sql.charAt(fin)) || "_$#".indexOf(sql.charAt(fin)) >= 0)) fin++;
+                    String palabra = sql.substring(i, fin);
+                    if (fin < n && sql.charAt(fin) == '\'' && fin + 1 < n && (palabra.equalsIgnoreCase("Q") || palabra.equalsIgnoreCase("NQ"))) {
+                        // Literal q'x...x'
+                        char cierre = LectorSentencias.cierreQ(sql.charAt(fin + 1));
+                        int finLiteral = sql.indexOf(cierre + "'", fin + 2);
+                        if (finLiteral < 0) return new FormaSentencia(sql, Collections.emptyList());
+                        if (!enlazar || palabra.length() == 2) {
+                            forma.append(sql, i, finLiteral + 2);
+                        } else {
+                            forma.append('?');
+                            valores.add(sql.substring(fin + 2, finLiteral));
+                        }
+                        i = finLiteral + 2;
+                    } else if (fin < n && sql.charAt(fin) == '\'' && palabra.equalsIgnoreCase("N")) {
+                        // Literal nacional N'...': se copia la N y el literal se conserva en la siguiente vuelta
+                        forma.append(palabra);
+                        int cierre = fin + 1;
+                        while (cierre < n && !(sql.charAt(cierre) == '\'' && (cierre + 1 >= n || sql.charAt(cierre + 1) != '\''))) {
+                            cierre += sql.charAt(cierre) == '\'' ? 2 : 1;
+                        }
+                        if (cierre >= n) return new FormaSentencia(sql, Collections.emptyList());
+                        forma.append(sql, fin, cierre + 1);
+                        i = cierre + 1;
+                    } else {
+                        forma.append(palabra);
+                        String clave = palabra.toUpperCase();
+                        if (verbo == null) verbo = clave;
+                        trasValues = false;
+                        if (parentesis.isEmpty()) {
+                            if (clave.equals("VALUES")) {
+                                trasValues = true;
+                            } else if (clave.equals("SET") && (verbo.equals("UPDATE") || verbo.equals("MERGE"))) {
+                                zona = true;
+                            } else if (clave.equals("WHERE") && (verbo.equals("UPDATE") || verbo.equals("DELETE") || verbo.equals("MERGE"))) {
+                                zona = true;
+                            } else if (clave.equals("RETURNING") || clave.equals("ORDER") || clave.equals("GROUP")) {
+                                zona = false;
+                            }
+                            enlazar = zona;
+                        }
+                        i = fin;
+                    }
+                } else if ((Character.isDigit(c) || (c == '.' && Character.isDigit(siguiente)))
+                        && (forma.length() == 0 || ":.".indexOf(forma.charAt(forma.length() - 1)) < 0)) {
+                    int fin = i;
+                    while (fin < n && Character.isDigit(sql.charAt(fin))) fin++;
+                    if (fin < n && sql.charAt(fin) == '.') {
+                        fin++;
+                        while (fin < n && Character.isDigit(sql.charAt(fin))) fin++;
+                    }
+                    if (fin < n && (sql.charAt(fin) == 'e' || sql.charAt(fin) == 'E')) {
+                        int exponente = fin + 1;
+                        if (exponente < n && (sql.charAt(exponente) == '+' || sql.charAt(exponente) == '-')) exponente++;
+                        if (exponente < n && Character.isDigit(sql.charAt(exponente))) {
+                            fin = exponente;
+                            while (fin < n && Character.isDigit(sql.charAt(fin))) fin++;
+                        }
+                    }
+                    if (!enlazar || (fin < n && (Character.isLetter(sql.charAt(fin)) || sql.charAt(fin) == '_'))) {
+                        // Fuera de VALUES, o 10d, 1.5f...: se deja como está
+                        forma.append(sql, i, fin);
+                    } else {
+                        forma.append('?');
+                        valores.add(new BigDecimal(sql.substring(i, fin)));
+                    }
+                    i = fin;
+                } else {
+                    if (c == '(') {
+                        if (empiezaSubconsulta(sql, i + 1) || palabraAnterior(forma).equals("IN")) {
+                            enlazar = false;
+                        } else if (trasValues && parentesis.isEmpty()) {
+                            enlazar = true;
+                        }
+                        parentesis.push(enlazar);
+                    } else if (c == ')' && !parentesis.isEmpty()) {
+                        parentesis.pop();
+                        enlazar = parentesis.isEmpty() ? zona : parentesis.peek();
+                    }
+                    if (!Character.isWhitespace(c)) trasValues = false;
+                    forma.append(c);
+                    i++;
+                }
+            }
+            return new FormaSentencia(forma.toString(), valores);
+        }
+
+        // Indica si tras la posición (un paréntesis abierto) empieza una subconsulta
+        private static boolean empiezaSubconsulta(String sql, int desde) {
+            int inicio = desde;
+            while (inicio < sql.length() && (Character.isWhitespace(sql.charAt(inicio)) || sql.charAt(inicio) == '(')) inicio++;
+            int fin = inicio;
+            while (fin < sql.length() && Character.isLetter(sql.charAt(fin))) fin++;
+            String palabra = sql.substring(inicio, fin);
+            return palabra.equalsIgnoreCase("SELECT") || palabra.equalsIgnoreCase("WITH");
+        }
+
+        private static String palabraAnterior(StringBuilder texto) {
+            int fin = texto.length();
+            while (fin > 0 && Character.isWhitespace(texto.charAt(fin - 1))) fin--;
+            int inicio = fin;
+            while (inicio > 0 && Character.isLetter(texto.charAt(inicio - 1))) inicio--;
+            return texto.substring(inicio, fin).toUpperCase();
+        }
+    }
+
+    // Caché LRU de PreparedStatement de una sesión, indexada por la forma normalizada de la sentencia
+    private static class CacheSentencias implements Closeable {
+        private final Connection conn;
+        private final LinkedHashMap<String, PreparedStatement> sentencias;
+
+        CacheSentencias(Connection conn, int capacidad) {
+            this.conn = conn;
+            this.sentencias = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> mayor) {
+                    if (size() <= capacidad) return false;
+                    cerrar(mayor.getValue());
+                    return true;
+                }
+            };
+        }
+
+        PreparedStatement preparar(String sql) throws SQLException {
+            PreparedStatement ps = sentencias.get(sql);
+            if (ps == null) {
+                ps = conn.prepareStatement(sql);
+                sentencias.put(sql, ps);
+            }
+            return ps;
+        }
+
+        private static void cerrar(PreparedStatement ps) {
+            try {
+                ps.close();
+            } catch (SQLException ignored) {}
+        }
+
+        @Override
+        public void close() {
+            for (PreparedStatement ps : sentencias.values()) cerrar(ps);
+            sentencias.clear();
+        }
+    }
+
+    // Ejecuta la sentencia tal cual, con sus literales; devuelve false si falla
+    private static boolean ejecutarLiteral(Connection conn, String sql) {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // Línea del script a la espera de confirmarse (comentario o sentencia)
+    private static class LineaPendiente {
+        final long numero;
+        final long linea;
+        final String lineaOriginal;
+        final String sql;
+        FormaSentencia forma;
+        boolean correcta = true;
+
+        LineaPendiente(long numero, long linea, String lineaOriginal, String sql) {
+            this.numero = numero;
+            this.linea = linea;
+            this.lineaOriginal = lineaOriginal;
+            this.sql = sql;
+        }
+    }
+
+    // Ejecución por lotes: agrupa el DML consecutivo en lotes JDBC y confirma cada "commitCada" sentencias.
+    // Las líneas se anotan como OK al confirmarse, en el mismo orden del script.
+    private static class EjecutorLotes {
+        private final Connection conn;
+        private final DiarioEjecucion diario;
+        private final CacheSentencias cache;
+        private final int tamanoLote;
+        private final int commitCada;
+        private final List<LineaPendiente> sinConfirmar = new ArrayList<>();
+        private final List<LineaPendiente> lote = new ArrayList<>();
+        private int sentenciasSinConfirmar = 0;
+
+        EjecutorLotes(Connection conn, DiarioEjecucion diario, CacheSentencias cache, int tamanoLote, int commitCada) {
+            this.conn = conn;
+            this.diario = diario;
+            this.cache = cache;
+            this.tamanoLote = Math.max(1, tamanoLote);
+            this.commitCada = Math.max(1, commitCada);
+        }
+
+        void comentario(long numero, long linea, String lineaOriginal) {
+            sinConfirmar.add(new LineaPendiente(numero, linea, lineaOriginal, null));
+        }
+
+        void sentencia(long numero, long linea, String lineaOriginal, String sql) throws IOException {
+            LineaPendiente pendiente = new LineaPendiente(numero, linea, lineaOriginal, sql);
+            if (!esDML(sql)) {
+                // DDL, PL/SQL, etc.: se confirma lo pendiente y se ejecuta de forma individual
+                ejecutarLote();
+                confirmar();
+                sinConfirmar.add(pendiente);
+                long inicio = System.nanoTime();
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(sql);
+                } catch (SQLException e) {
+                    marcarError(pendiente);
+                }
+                registrarMetrica(claveMetrica(sql), System.nanoTime() - inicio, 1, pendiente.correcta, () -> "línea " + linea + ": " + sql);
+                sentenciasSinConfirmar++;
+                confirmar();
+                return;
+            }
+            sinConfirmar.add(pendiente);
+            lote.add(pendiente);
+            if (lote.size() >= tamanoLote) {
+                ejecutarLote();
+            }
+            if (sentenciasSinConfirmar >= commitCada) {
+                confirmar();
+            }
+        }
+
+        void finalizar() throws IOException {
+            ejecutarLote();
+            confirmar();
+        }
+
+        private void ejecutarLote() throws IOException {
+            if (lote.isEmpty()) return;
+            long inicio = System.nanoTime();
+            ejecutarParte(new ArrayList<>(lote));
+            long duracion = System.nanoTime() - inicio;
+            // La latencia es la del lote entero y va a la clave LOTE. Filas y errores se anotan en la clave
+            // de cada sentencia, y el tiempo de ejecución se reparte entre claves según sus sentencias.
+            Map<String, int[]> porClave = new LinkedHashMap<>();
+            for (LineaPendiente pendiente : lote) {
+                int[] cuenta = porClave.computeIfAbsent(claveMetrica(pendiente.sql), k -> new int[2]);
+                cuenta[pendiente.correcta ? 0 : 1]++;
+            }
+            for (Map.Entry<String, int[]> entrada : porClave.entrySet()) {
+                int[] cuenta = entrada.getValue();
+                metricas.addPhase(entrada.getKey(), OracleRunMetrics.EXECUTE, duracion * (cuenta[0] + cuenta[1]) / lote.size());
+                metricas.addRows(entrada.getKey(), cuenta[0]);
+                for (int i = 0; i < cuenta[1]; i++) metricas.addError(entrada.getKey());
+            }
+            LineaPendiente primera = lote.get(0);
+            int sentencias = lote.size();
+            metricas.record("LOTE", duracion,
+                    () -> "lote de " + sentencias + " sentencias desde la línea " + primera.linea + ": " + primera.sql);
+            sentenciasSinConfirmar += lote.size();
+            lote.clear();
+        }
+
+        // Ejecuta la parte como un lote; si falla, deshace hasta el savepoint y divide en mitades
+        private void ejecutarParte(List<LineaPendiente> parte) throws IOException {
+            Savepoint savepoint;
+            try {
+                savepoint = conn.setSavepoint();
+            } catch (SQLException e) {
+                for (LineaPendiente pendiente : parte) marcarError(pendiente);
+                return;
+            }
+            try {
+                if (cache != null) {
+                    ejecutarConVariables(parte);
+                } else {
+                    try (Statement stmt = conn.createStatement()) {
+                        for (LineaPendiente pendiente : parte) stmt.addBatch(pendiente.sql);
+                        stmt.executeBatch();
+                    }
+                }
+                return;
+            } catch (SQLException e) {
+                try {
+                    conn.rollback(savepoint);
+                } catch (SQLException ex) {
+                    for (LineaPendiente pendiente : parte) marcarError(pendiente);
+                    return;
+                }
+            }
+            if (parte.size() == 1) {
+                // Con variables de enlace se reintenta con los literales originales antes de darla por errónea
+                if (cache == null || !ejecutarLiteral(conn, parte.get(0).sql)) marcarError(parte.get(0));
+                return;
+            }
+            int mitad = parte.size() / 2;
+            ejecutarParte(new ArrayList<>(parte.subList(0, mitad)));
+            ejecutarParte(new ArrayList<>(parte.subList(mitad, parte.size())));
+        }
+
+        // Agrupa las sentencias consecutivas con la misma forma en un lote del mismo PreparedStatement
+        private void ejecutarConVariables(List<LineaPendiente> parte) throws SQLException {
+            PreparedStatement actual = null;
+            String formaActual = null;
+            try {
+                for (LineaPendiente pendiente : parte) {
+                    if (pendiente.forma == null) pendiente.forma = FormaSentencia.de(pendiente.sql);
+                    if (!pendiente.forma.sql.equals(formaActual)) {
+                        // Se ejecuta antes de preparar la siguiente forma, que podría expulsarlo de la caché
+                        if (actual != null) actual.executeBatch();
+                        actual = cache.preparar(pendiente.forma.sql);
+                        formaActual = pendiente.forma.sql;
+                    }
+                    pendiente.forma.enlazar(actual);
+                    actual.addBatch();
+                }
+                if (actual != null) actual.executeBatch();
+            } catch (SQLException e) {
+                if (actual != null) {
+                    try {
+                        actual.clearBatch();
+                    } catch (SQLException ignored) {}
+                }
+                throw e;
+            }
+        }
+
+        private void marcarError(LineaPendiente pendiente) throws IOException {
+            pendiente.correcta = false;
+            diario.registrar(DiarioEjecucion.KO, pendiente.numero, pendiente.lineaOriginal);
+            printColored("RED", "x");
+        }
+
+        // Confirma la transacción y anota como correctas las líneas pendientes
+        private void confirmar() throws IOException {
+            if (sinConfirmar.isEmpty()) return;
+            long inicio = System.nanoTime();
+            try {
+                conn.commit();
+                metricas.addPhase("COMMIT", OracleRunMetrics.EXECUTE, System.nanoTime() - inicio);
+            } catch (SQLException e) {
+                // Si falla el commit no se sabe qué ha quedado aplicado: todo lo pendiente va a KO.SQL
+                for (LineaPendiente pendiente : sinConfirmar) {
+                    if (pendiente.sql != null && pendiente.correcta) marcarError(pendiente);
+                }
+            }
+            for (LineaPendiente pendiente : sinConfirmar) {
+                if (!pendiente.correcta) continue;
+                if (pendiente.sql == null) {
+                    diario.registrar(DiarioEjecucion.COMENTARIO, pendiente.numero, pendiente.lineaOriginal);
+                    printColored("BLUE", "-");
+                } else {
+                    diario.registrar(DiarioEjecucion.OK, pendiente.numero, pendiente.lineaOriginal);
+                    printColored("GREEN", ".");
+                }
+            }
+            sinConfirmar.clear();
+            sentenciasSinConfirmar = 0;
+        }
+    }
+
+    // Ejecuta una sentencia en la sesión indicada, por lotes si hay ejecutor de lotes y con variables
+    // de enlace si hay caché de sentencias
+    private static void ejecutar(Connection conn, DiarioEjecucion diario, EjecutorLotes lotes, CacheSentencias cache,
+            Sentencia sentencia) throws IOException {
+        if (lotes != null) {
+            lotes.sentencia(sentencia.numero, sentencia.linea, sentencia.original, sentencia.sql);
+            return;
+        }
+        long inicio = System.nanoTime();
+        boolean correcta = ejecutarConCommit(conn, cache, sentencia.sql);
+        registrarMetrica(claveMetrica(sentencia.sql), System.nanoTime() - inicio, 1, correcta,
+                () -> "línea " + sentencia.linea + ": " + sentencia.sql);
+        if (correcta) {
+            diario.registrar(DiarioEjecucion.OK, sentencia.numero, sentencia.original);
+            printColored("GREEN", ".");
+        } else {
+            diario.registrar(DiarioEjecucion.KO, sentencia.numero, sentencia.original);
+            printColored("RED", "x");
+        }
+    }
+
+    private static boolean ejecutarConCommit(Connection conn, CacheSentencias cache, String sql) {
+        if (cache != null && esDML(sql)) {
+            try {
+                FormaSentencia forma = FormaSentencia.de(sql);
+                PreparedStatement ps = cache.preparar(forma.sql);
+                forma.enlazar(ps);
+                ps.executeUpdate();
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                // Se reintenta abajo con los literales originales
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+            conn.commit();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // Anota en las métricas la ejecución de "sentencias" sentencias (una o un lote) con la clave indicada
+    private static void registrarMetrica(String clave, long nanos, int sentencias, boolean correcta, Supplier<String> detalle) {
+        metricas.addPhase(clave, OracleRunMetrics.EXECUTE, nanos);
+        metricas.record(clave, nanos, detalle);
+        if (correcta) {
+            metricas.addRows(clave, sentencias);
+        } else {
+            metricas.addError(clave);
+        }
+    }
+
+    // Forma de la sentencia para las métricas: el verbo y, si es DML sobre una tabla, la tabla
+    private static String claveMetrica(String sql) {
+        String verbo = siguientePalabra(sql, new int[]{0});
+        if (verbo == null) return "?";
+        String tabla = tablaDestino(sql);
+        return tabla == null ? verbo.toUpperCase() : verbo.toUpperCase() + " " + tabla;
+    }
+
+    // Devuelve la tabla destino de un INSERT INTO, UPDATE, DELETE [FROM] o MERGE INTO sobre una sola tabla,
+    // normalizada a mayúsculas salvo las partes entre comillas, o null si no se puede determinar.
+    private static String tablaDestino(String sql) {
+        int[] pos = {0};
+        String verbo = siguientePalabra(sql, pos);
+        if (verbo == null) return null;
+        switch (verbo.toUpperCase()) {
+            case "INSERT":
+            case "MERGE":
+                String into = siguientePalabra(sql, pos);
+                if (into == null || !into.equalsIgnoreCase("INTO")) return null;
+                break;
+            case "DELETE":
+                int antes = pos[0];
+                String from = siguientePalabra(sql, pos);
+                if (from == null || !from.equalsIgnoreCase("FROM")) pos[0] = antes;
+                break;
+            case "UPDATE":
+                break;
+            default:
+                return null;
+        }
+        saltarEspaciosYComentarios(sql, pos);
+        StringBuilder tabla = new StringBuilder();
+        int i = pos[0];
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '"') {
+                int cierre = sql.indexOf('"', i + 1);
+                if (cierre < 0) return null;
+                tabla.append(sql, i, cierre + 1);
+                i = cierre + 1;
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#' || c == '.' || c == '@') {
+                tabla.append(Character.toUpperCase(c));
+                i++;
+            } else {
+                break;
+            }
+        }
+        return tabla.length() == 0 ? null : tabla.toString();
+    }
+
+    private static String siguientePalabra(String sql, int[] pos) {
+        saltarEspaciosYComentarios(sql, pos);
+        int inicio = pos[0];
+        while (pos[0] < sql.length() && Character.isLetter(sql.charAt(pos[0]))) pos[0]++;
+        return pos[0] > inicio ? sql.substring(inicio, pos[0]) : null;
+    }
+
+    // Salta espacios, comentarios y hints ("/*+ ... */") entre las palabras de la cabecera
+    private static void saltarEspaciosYComentarios(String sql, int[] pos) {
+        while (pos[0] < sql.length()) {
+            if (Character.isWhitespace(sql.charAt(pos[0]))) {
+                pos[0]++;
+            } else if (sql.startsWith("/*", pos[0])) {
+                int fin = sql.indexOf("*/", pos[0] + 2);
+                pos[0] = fin < 0 ? sql.length() : fin + 2;
+            } else if (sql.startsWith("--", pos[0])) {
+                int fin = sql.indexOf('\n', pos[0]);
+                pos[0] = fin < 0 ? sql.length() : fin + 1;
+            } else {
+                break;
+            }
+        }
+    }
+
+    // Reparto de las sentencias entre varias sesiones según la tabla destino
+    private static class EjecucionParalela implements Closeable {
+        private final SesionParalela[] sesiones;
+
+        EjecucionParalela(int numero, OracleConnectionPool pool, DiarioEjecucion diario,
+                boolean modoLotes, int tamanoLote, int commitCada, int tamanoCache) throws SQLException {
+            sesiones = new SesionParalela[numero];
+            try {
+                for (int i = 0; i < numero; i++) {
+                    Connection conn = pool.getConnection();
+                    conn.setAutoCommit(false);
+                    CacheSentencias cache = tamanoCache > 0 ? new CacheSentencias(conn, tamanoCache) : null;
+                    sesiones[i] = new SesionParalela(i + 1, conn, diario, cache,
+                            modoLotes ? new EjecutorLotes(conn, diario, cache, tamanoLote, commitCada) : null);
+                }
+            } catch (SQLException e) {
+                cerrarConexiones();
+                throw e;
+            }
+            for (SesionParalela sesion : sesiones) sesion.start();
+        }
+
+        void enviar(String tabla, Sentencia sentencia) throws IOException {
+            sesiones[Math.floorMod(claveReparto(tabla).hashCode(), sesiones.length)].enviar(new Orden(sentencia, null));
+        }
+
+        // Nombre de la tabla sin comillas, en mayúsculas y sin esquema, para que ESQUEMA.T, "T" y t vayan
+        // siempre a la misma sesión. Dos tablas homónimas de esquemas distintos comparten sesión, lo que
+        // solo reduce el paralelismo
+        static String claveReparto(String tabla) {
+            int punto = -1;
+            boolean comillas = false;
+            for (int i = 0; i < tabla.length(); i++) {
+                char c = tabla.charAt(i);
+                if (c == '"') comillas = !comillas;
+                else if (c == '.' && !comillas) punto = i;
+            }
+            return tabla.substring(punto + 1).replace("\"", "").toUpperCase();
+        }
+
+        // Barrera: espera a que todas las sesiones ejecuten y confirmen lo que tienen pendiente
+        void sincronizar() throws IOException {
+            CountDownLatch barrera = new CountDownLatch(sesiones.length);
+            for (SesionParalela sesion : sesiones) sesion.enviar(new Orden(null, barrera));
+            try {
+                barrera.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrumpido esperando a las sesiones paralelas");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                for (SesionParalela sesion : sesiones) {
+                    if (sesion.isAlive()) sesion.enviar(Orden.FIN);
+                }
+                for (SesionParalela sesion : sesiones) sesion.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                cerrarConexiones();
+            }
+        }
+
+        private void cerrarConexiones() {
+            for (SesionParalela sesion : sesiones) {
+                if (sesion == null) continue;
+                if (sesion.cache != null) sesion.cache.close();
+                try {
+                    sesion.conn.close();
+                } catch (SQLException ignored) {}
+            }
+        }
+    }
+
+    // Orden para una sesión paralela: ejecutar una sentencia, alcanzar una barrera o terminar
+    private static class Orden {
+        static final Orden FIN = new Orden(null, null);
+
+        final Sentencia sentencia;
+        final CountDownLatch barrera;
+
+        Orden(Sentencia sentencia, CountDownLatch barrera) {
+            this.sentencia = sentencia;
+            this.barrera = barrera;
+        }
+    }
+
+    private static class SesionParalela extends Thread {
+        // Tiempo sin órdenes tras el cual la sesión confirma lo pendiente, para no retener bloqueos de
+        // filas que otra sesión puede estar esperando
+        private static final long ESPERA_INACTIVA_MS = 200;
+
+        private final BlockingQueue<Orden> cola = new ArrayBlockingQueue<>(1000);
+        private final Connection conn;
+        private final DiarioEjecucion diario;
+        private final CacheSentencias cache;
+        private final EjecutorLotes lotes;
+
+        SesionParalela(int numero, Connection conn, DiarioEjecucion diario, CacheSentencias cache, EjecutorLotes lotes) {
+            super("sesion-" + numero);
+            this.conn = conn;
+            this.diario = diario;
+            this.cache = cache;
+            this.lotes = lotes;
+        }
+
+        void enviar(Orden orden) throws IOException {
+            try {
+                while (!cola.offer(orden, 100, TimeUnit.MILLISECONDS)) {
+                    if (!isAlive()) throw new IOException("La sesión " + getName() + " ha terminado con error");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrumpido enviando a " + getName());
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Orden orden = cola.poll(ESPERA_INACTIVA_MS, TimeUnit.MILLISECONDS);
+                    if (orden == null) {
+                        // Cola vacía: se confirma lo pendiente antes de quedarse esperando
+                        if (lotes != null) lotes.finalizar();
+                        orden = cola.take();
+                    }
+                    if (orden == Orden.FIN) break;
+                    if (orden.barrera != null) {
+                        if (lotes != null) lotes.finalizar();
+                        orden.barrera.countDown();
+                    } else {
+                        ejecutar(conn, diario, lotes, cache, orden.sentencia);
+                    }
+                }
+                if (lotes != null) lotes.finalizar();
+            } catch (IOException e) {
+                System.err.println("Error en " + getName() + ": " + e.getMessage());
+                // Liberar a quien espere en una barrera pendiente
+                for (Orden orden : cola) {
+                    if (orden.barrera != null) orden.barrera.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     public static void main(String[] args) {
         try {
-            Map<String, String> config = leerConfiguracion("OracleScriptRunner.ini");
-            String codificacion = config.getOrDefault("CODIFICACION", "UTF-8");
-            String ip = config.get("IP");
-            String puerto = config.get("PUERTO");
-            String sid = config.get("SID");
-            String usuario = config.get("USUARIO");
-            String clave = config.get("CLAVE");
-            String archivoSql = config.get("ARCHIVO_SQL");
+            Properties config = OracleConnectionPool.loadConfig("OracleScriptRunner.ini");
+            String codificacion = config.getProperty("CODIFICACION", "UTF-8");
+            String archivoSql = config.getProperty("ARCHIVO_SQL");
             if (args.length > 0) {
                 archivoSql = args[0];
             }
-            String eliminarPuntoYComa = config.getOrDefault("ELIMINAR_PUNTO_Y_COMA", "SI").toUpperCase();
-
-            String url = "jdbc:oracle:thin:@" + ip + ":" + puerto + ":" + sid;
+            boolean eliminarPuntoYComa = config.getProperty("ELIMINAR_PUNTO_Y_COMA", "SI").equalsIgnoreCase("SI");
+            String modoSentencias = config.getProperty("MODO_SENTENCIAS", "LINEA").toUpperCase();
+            boolean modoLotes = config.getProperty("MODO_LOTES", "NO").equalsIgnoreCase("SI");
+            int tamanoLote = Integer.parseInt(config.getProperty("TAMANO_LOTE", "100"));
+            int commitCada = Integer.parseInt(config.getProperty("COMMIT_CADA", "1000"));
+            long volcadoMs = Long.parseLong(config.getProperty("DIARIO_VOLCADO_MS", "1000"));
+            boolean fsync = config.getProperty("DIARIO_FSYNC", "NO").equalsIgnoreCase("SI");
+            int sesionesParalelas = Integer.parseInt(config.getProperty("SESIONES_PARALELAS", "1"));
+            int tamanoCache = config.getProperty("CONVERTIR_LITERALES", "NO").equalsIgnoreCase("SI")
+                    ? Math.max(1, Integer.parseInt(config.getProperty("CACHE_SENTENCIAS", "100"))) : 0;
+            metricas = new OracleRunMetrics("OracleScriptRunner", Integer.parseInt(config.getProperty("METRICAS_TOP", "20")));
 
+            // Sesión principal más una por cada sesión paralela, abiertas y preparadas desde el principio
+            int sesiones = sesionesParalelas > 1 ? sesionesParalelas + 1 : 1;
+            OracleConnectionPool pool;
             Connection conn;
             try {
-                conn = DriverManager.getConnection(url, usuario, clave);
+                pool = new OracleConnectionPool(config, sesiones, sesiones);
+                conn = pool.getConnection();
                 conn.setAutoCommit(false);
             } catch (SQLException e) {
                 System.err.println("Error de conexión: " + e.getMessage());
@@ -108,19 +1270,16 @@ public class OracleScriptRunner {
 
             eliminarArchivoKO();
 
-            List<String> lineas = new ArrayList<>();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(new FileInputStream(archivoSql), codificacion))) {
-                String linea;
-                while ((linea = reader.readLine()) != null) {
-                    lineas.add(linea);
-                }
+            FileInputStream entrada;
+            BufferedReader reader;
+            try {
+                entrada = new FileInputStream(archivoSql);
+                reader = new BufferedReader(new InputStreamReader(entrada, codificacion), 1 << 16);
             } catch (FileNotFoundException e) {
                 System.err.println("Archivo " + archivoSql + " no encontrado");
                 return;
             }
 
-            List<String> lineasRestantes = new ArrayList<>();
             final boolean[] detenerProceso = {false};
 
             System.out.println("Procesando sentencias. Presiona ENTER para salir...");
@@ -133,74 +1292,66 @@ public class OracleScriptRunner {
             });
             inputThread.start();
 
-            for (String linea : lineas) {
-                if (detenerProceso[0]) break;
+            try (LectorSentencias lector = new LectorSentencias(reader, modoSentencias.equals("MULTILINEA"), eliminarPuntoYComa);
+                 DiarioEjecucion diario = new DiarioEjecucion(archivoSql, modoSentencias, codificacion, volcadoMs, fsync);
+                 EjecucionParalela paralela = sesionesParalelas > 1
+                         ? new EjecucionParalela(sesionesParalelas, pool, diario, modoLotes, tamanoLote, commitCada, tamanoCache)
+                         : null;
+                 CacheSentencias cache = tamanoCache > 0 ? new CacheSentencias(conn, tamanoCache) : null) {
+                EjecutorLotes lotes = modoLotes ? new EjecutorLotes(conn, diario, cache, tamanoLote, commitCada) : null;
 
-                String[] resultado = eliminarComentarios(linea);
-                String lineaProcesada = resultado[0];
-                String tipo = resultado[1];
-
-                // Guardamos la línea original para los archivos
-                String lineaOriginal = linea.trim();
-
-                if (tipo.equals("COMENTARIO")) {
-                    // Guardar comentario en OK.SQL
-                    try (BufferedWriter writer = new BufferedWriter(
-                            new OutputStreamWriter(new FileOutputStream("OK.SQL", true), codificacion))) {
-                        writer.write(lineaOriginal);
-                        writer.newLine();
+                Sentencia sentencia;
+                long lectura = 0;
+                long inicioLectura = System.nanoTime();
+                while (!detenerProceso[0] && (sentencia = lector.siguiente()) != null) {
+                    lectura += System.nanoTime() - inicioLectura;
+                    if (diario.completada(sentencia.numero)) {
+                        inicioLectura = System.nanoTime();
+                        continue;
                     }
-                    printColored("BLUE", "-");
-                    continue;
-                }
 
-                // Eliminar punto y coma al final si está configurado
-                if (eliminarPuntoYComa.equals("SI") && lineaProcesada.endsWith(";")) {
-                    lineaProcesada = lineaProcesada.substring(0, lineaProcesada.length() - 1).trim();
-                }
-
-                if (!lineaProcesada.isEmpty()) {
-                    try (Statement stmt = conn.createStatement()) {
-                        stmt.execute(lineaProcesada);
-                        conn.commit();
-                        // Guardar sentencia correcta en OK.SQL
-                        try (BufferedWriter writer = new BufferedWriter(
-                                new OutputStreamWriter(new FileOutputStream("OK.SQL", true), codificacion))) {
-                            writer.write(lineaOriginal);
-                            writer.newLine();
-                        }
-                        printColored("GREEN", ".");
-                    } catch (SQLException e) {
-                        // Guardar sentencia errónea en KO.SQL
-                        try (BufferedWriter writer = new BufferedWriter(
-                                new OutputStreamWriter(new FileOutputStream("KO.SQL", true), codificacion))) {
-                            writer.write(lineaOriginal);
-                            writer.newLine();
+                    // Comentario o línea vacía tras eliminar comentarios
+                    if (sentencia.sql == null) {
+                        if (lotes != null) {
+                            lotes.comentario(sentencia.numero, sentencia.linea, sentencia.original);
+                        } else {
+                            diario.registrar(DiarioEjecucion.COMENTARIO, sentencia.numero, sentencia.original);
+                            printColored("BLUE", "-");
                         }
-                        printColored("RED", "x");
-                        lineasRestantes.add(linea);
+                        inicioLectura = System.nanoTime();
+                        continue;
                     }
-                } else {
-                    // Línea vacía tras eliminar comentarios
-                    try (BufferedWriter writer = new BufferedWriter(
-                            new OutputStreamWriter(new FileOutputStream("OK.SQL", true), codificacion))) {
-                        writer.write(lineaOriginal);
-                        writer.newLine();
+
+                    if (paralela == null) {
+                        ejecutar(conn, diario, lotes, cache, sentencia);
+                        inicioLectura = System.nanoTime();
+                        continue;
                     }
-                    printColored("BLUE", "-");
+
+                    String tabla = tablaDestino(sentencia.sql);
+                    if (tabla != null) {
+                        paralela.enviar(tabla, sentencia);
+                    } else {
+                        // Barrera global: se ejecuta sola en la sesión principal
+                        paralela.sincronizar();
+                        ejecutar(conn, diario, lotes, cache, sentencia);
+                        if (lotes != null) lotes.finalizar();
+                    }
+                    inicioLectura = System.nanoTime();
                 }
-            }
+                metricas.addPhase("LECTOR", OracleRunMetrics.PARSE, lectura);
+                // Posición en el fichero: bytes reales leídos, sea cual sea la codificación
+                metricas.addBytes("LECTOR", entrada.getChannel().position());
 
-            // Actualizar el fichero original con las líneas no ejecutadas correctamente
-            try (BufferedWriter writer = new BufferedWriter(
-                    new OutputStreamWriter(new FileOutputStream(archivoSql), codificacion))) {
-                for (String linea : lineasRestantes) {
-                    writer.write(linea);
-                    writer.newLine();
+                if (lotes != null) {
+                    lotes.finalizar();
                 }
             }
 
             conn.close();
+            pool.close();
+            metricas.writeReport(new File(config.getProperty("INFORME_METRICAS", "OracleScriptRunner.metricas.json")),
+                    new File(config.getProperty("INFORME_LENTAS", "OracleScriptRunner.lentas.txt")));
             System.out.println();
             System.out.println("Proceso finalizado.");
 